@@ -1,5 +1,8 @@
 package moe.caa.multilogin.api.auth;
 
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 验证 API
  */
@@ -14,4 +17,21 @@ public interface AuthAPI {
      * @return 验证结果
      */
     AuthResult auth(String username, String serverId, String ip);
+
+    /**
+     * 进行异步验证，验证期间不会占用调用线程
+     *
+     * @param username 用户名
+     * @param serverId 服务器ID
+     * @param ip       用户IP
+     * @return 验证结果
+     */
+    CompletableFuture<? extends AuthResult> authAsync(String username, String serverId, String ip);
+
+    /**
+     * 获得所有 Yggdrasil 验证服务器的健康状态
+     *
+     * @return 健康状态
+     */
+    Collection<? extends ServiceHealth> getServiceHealths();
 }
@@ -30,6 +30,7 @@ public interface AuthResult {
         ALLOW,
         DISALLOW_BY_YGGDRASIL_AUTHENTICATOR,
         DISALLOW_BY_VALIDATE_AUTHENTICATOR,
+        DISALLOW_BY_SERVER_BUSY,
         ERROR
     }
 }
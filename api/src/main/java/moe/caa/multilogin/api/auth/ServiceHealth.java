@@ -0,0 +1,44 @@
+package moe.caa.multilogin.api.auth;
+
+/**
+ * 验证服务器的健康状态
+ */
+public interface ServiceHealth {
+
+    /**
+     * 获得验证服务器 ID
+     */
+    int getServiceId();
+
+    /**
+     * 获得验证服务器名称
+     */
+    String getServiceName();
+
+    /**
+     * 获得熔断器状态
+     */
+    State getState();
+
+    /**
+     * 获得近期请求的失败率，范围为 0 到 1
+     */
+    double getFailureRate();
+
+    /**
+     * 获得近期响应时间的 p95 值，单位毫秒，样本不足时返回 -1
+     */
+    long getLatencyP95();
+
+    /**
+     * 熔断器状态
+     */
+    enum State {
+        // 正常，验证请求会发往这个验证服务器
+        CLOSED,
+        // 熔断，验证时跳过这个验证服务器
+        OPEN,
+        // 半开，正在后台探测这个验证服务器是否恢复
+        HALF_OPEN
+    }
+}
@@ -0,0 +1,37 @@
+package moe.caa.multilogin.api.main;
+
+/**
+ * 登录任务的准入统计
+ */
+public interface FlowsStatistics {
+
+    /**
+     * 获得最大同时进行的登录任务数
+     */
+    int getMaxConcurrency();
+
+    /**
+     * 获得等待队列的长度
+     */
+    int getMaxQueued();
+
+    /**
+     * 获得正在进行的登录任务数
+     */
+    int getActive();
+
+    /**
+     * 获得正在等待的登录任务数
+     */
+    int getQueued();
+
+    /**
+     * 获得因服务器繁忙被拒绝的登录任务总数
+     */
+    long getRejected();
+
+    /**
+     * 获得已完成的登录任务总数
+     */
+    long getCompleted();
+}
@@ -48,4 +48,9 @@ public interface MultiCoreAPI {
      * 获得插件对象
      */
     IPlugin getPlugin();
+
+    /**
+     * 获得登录任务的准入统计
+     */
+    FlowsStatistics getFlowsStatistics();
 }
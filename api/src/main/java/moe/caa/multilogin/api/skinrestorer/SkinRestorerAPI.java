@@ -2,6 +2,8 @@ package moe.caa.multilogin.api.skinrestorer;
 
 import moe.caa.multilogin.api.auth.AuthResult;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface SkinRestorerAPI {
 
     /**
@@ -9,4 +11,9 @@ public interface SkinRestorerAPI {
      */
     SkinRestorerResult doRestorer(AuthResult result);
 
+    /**
+     * 进行皮肤修复，需要访问网络的修复在皮肤修复线程中进行，不占用调用线程
+     */
+    CompletableFuture<SkinRestorerResult> doRestorerAsync(AuthResult result);
+
 }
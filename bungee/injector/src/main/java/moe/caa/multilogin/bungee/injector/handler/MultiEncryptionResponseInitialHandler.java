@@ -78,46 +78,57 @@ public class MultiEncryptionResponseInitialHandler extends AbstractMultiInitialH
          */
         String ip = getSocketAddressMethod.invoke(initialHandler) instanceof InetSocketAddress ? URLEncoder.encode(((InetSocketAddress) getAddressMethod.invoke(initialHandler)).getAddress().getHostAddress(), StandardCharsets.UTF_8) : "";
 
-        multiCoreAPI.getPlugin().getRunServer().getScheduler().runTaskAsync(() -> {
-
-            try {
-                LoginAuthResult result = (LoginAuthResult) multiCoreAPI.getAuthHandler().auth(encName, encodedHash, ip);
-                if (result.getResult() == AuthResult.Result.ALLOW) {
-                    GameProfile gameProfile = result.getResponse();
-
-                    try {
-                        SkinRestorerResult restorerResult = multiCoreAPI.getSkinRestorerHandler().doRestorer(result);
-                        if (restorerResult.getThrowable() != null) {
-                            LoggerProvider.getLogger().error("An exception occurred while processing the skin repair.", restorerResult.getThrowable());
-                        }
-                        LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), restorerResult.getReason()));
-
-                        if (restorerResult.getResponse() != null) {
-                            gameProfile = restorerResult.getResponse();
-                        }
-                    } catch (Exception e) {
-                        LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), "error"));
-                        LoggerProvider.getLogger().debug("An exception occurred while processing the skin repair.", e);
-                    }
-
+        multiCoreAPI.getAuthHandler().authAsync(encName, encodedHash, ip).whenComplete((authResult, throwable) -> {
+            if (throwable != null) {
+                handleException(throwable);
+                return;
+            }
+            LoginAuthResult result = (LoginAuthResult) authResult;
+            if (result.getResult() != AuthResult.Result.ALLOW) {
+                initialHandler.disconnect(result.getKickMessage());
+                return;
+            }
+            // 皮肤修复可能需要访问网络，在皮肤修复线程中处理，不占用工作流线程
+            multiCoreAPI.getSkinRestorerHandler().doRestorerAsync(result).whenComplete((restorerResult, restorerThrowable) -> {
+                try {
+                    GameProfile gameProfile = restoredProfile(result, restorerResult, restorerThrowable);
                     loginProfileFieldSetter.invoke(initialHandler, generateGameProfile(gameProfile));
                     nameFieldSetter.invoke(initialHandler, gameProfile.getName());
                     uniqueIdFieldSetter.invoke(initialHandler, gameProfile.getId());
                     finishMethod.invoke(initialHandler);
-                } else {
-                    initialHandler.disconnect(result.getKickMessage());
+                } catch (Throwable e) {
+                    handleException(e);
                 }
-            } catch (Throwable e) {
-                initialHandler.disconnect(new TextComponent(multiCoreAPI.getLanguageHandler().getMessage("auth_error")));
-                LoggerProvider.getLogger().error("An exception occurred while processing a login request.", e);
-            }
-
+            });
         });
 
         // This is ok.
         // thisState = InitialHandler.State.FINISHING;
     }
 
+    private GameProfile restoredProfile(LoginAuthResult result, SkinRestorerResult restorerResult, Throwable throwable) {
+        GameProfile gameProfile = result.getResponse();
+        if (throwable != null) {
+            LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), "error"));
+            LoggerProvider.getLogger().debug("An exception occurred while processing the skin repair.", throwable);
+            return gameProfile;
+        }
+        if (restorerResult.getThrowable() != null) {
+            LoggerProvider.getLogger().error("An exception occurred while processing the skin repair.", restorerResult.getThrowable());
+        }
+        LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), restorerResult.getReason()));
+
+        if (restorerResult.getResponse() != null) {
+            gameProfile = restorerResult.getResponse();
+        }
+        return gameProfile;
+    }
+
+    private void handleException(Throwable throwable) {
+        initialHandler.disconnect(new TextComponent(multiCoreAPI.getLanguageHandler().getMessage("auth_error")));
+        LoggerProvider.getLogger().error("An exception occurred while processing a login request.", throwable);
+    }
+
     private LoginResult generateGameProfile(GameProfile response) {
         return new LoginResult(
                 response.getId().toString().replace("-", ""),
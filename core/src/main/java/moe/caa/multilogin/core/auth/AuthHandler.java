@@ -3,14 +3,25 @@ package moe.caa.multilogin.core.auth;
 import lombok.Getter;
 import moe.caa.multilogin.api.auth.AuthAPI;
 import moe.caa.multilogin.api.auth.GameProfile;
+import moe.caa.multilogin.api.auth.ServiceHealth;
 import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.main.FlowsStatistics;
 import moe.caa.multilogin.core.auth.service.BaseServiceAuthenticationResult;
 import moe.caa.multilogin.core.auth.service.yggdrasil.YggdrasilAuthenticationResult;
 import moe.caa.multilogin.core.auth.service.yggdrasil.YggdrasilAuthenticationService;
 import moe.caa.multilogin.core.auth.validate.ValidateAuthenticationResult;
 import moe.caa.multilogin.core.auth.validate.ValidateAuthenticationService;
+import moe.caa.multilogin.core.configuration.AdmissionConfig;
 import moe.caa.multilogin.core.handle.PlayerHandler;
 import moe.caa.multilogin.core.main.MultiCore;
+import moe.caa.multilogin.flows.executor.AdmissionController;
+import moe.caa.multilogin.flows.executor.AdmissionRejectedException;
+import moe.caa.multilogin.flows.workflows.BaseFlows;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 /**
  * 验证核心
@@ -20,6 +31,8 @@ public class AuthHandler implements AuthAPI {
     private final MultiCore core;
     private final YggdrasilAuthenticationService yggdrasilAuthenticationService;
     private final ValidateAuthenticationService validateAuthenticationService;
+    private volatile AdmissionController admissionController;
+    private AdmissionConfig admissionConfig;
 
 
     public AuthHandler(MultiCore core) {
@@ -38,29 +51,60 @@ public class AuthHandler implements AuthAPI {
      */
     @Override
     public LoginAuthResult auth(String username, String serverId, String ip) {
-        YggdrasilAuthenticationResult yggdrasilAuthenticationResult;
+        return authAsync(username, serverId, ip).join();
+    }
+
+    /**
+     * 开始异步验证
+     * 同时处理的登录请求超出上限时排队等待，队列已满或等待超时时返回服务器繁忙的结果
+     *
+     * @param username 用户名
+     * @param serverId 服务器ID
+     * @param ip       用户IP
+     */
+    @Override
+    public CompletableFuture<LoginAuthResult> authAsync(String username, String serverId, String ip) {
+        return getAdmissionController().submit(() -> authAsync0(username, serverId, ip)).exceptionally(throwable -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof AdmissionRejectedException) {
+                LoggerProvider.getLogger().debug(String.format("Rejected the login request of %s, reason: %s.",
+                        username, ((AdmissionRejectedException) cause).getReason().name()));
+                return LoginAuthResult.ofServerBusy(core.getLanguageHandler().getMessage("auth_server_busy"));
+            }
+            LoggerProvider.getLogger().error("An exception occurred while processing the login request.", cause);
+            return LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(null, core.getLanguageHandler().getMessage("auth_yggdrasil_error"));
+        });
+    }
+
+    private CompletableFuture<LoginAuthResult> authAsync0(String username, String serverId, String ip) {
+        CompletableFuture<YggdrasilAuthenticationResult> future;
         try {
-            yggdrasilAuthenticationResult = yggdrasilAuthenticationService.hasJoined(username, serverId, ip);
+            future = yggdrasilAuthenticationService.hasJoinedAsync(username, serverId, ip);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.handle((yggdrasilAuthenticationResult, throwable) -> {
+            if (throwable != null) {
+                LoggerProvider.getLogger().error("An exception occurred while processing the hasJoined request.", throwable);
+                return CompletableFuture.completedFuture(LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(null, core.getLanguageHandler().getMessage("auth_yggdrasil_error")));
+            }
             if (yggdrasilAuthenticationResult.getReason() == YggdrasilAuthenticationResult.Reason.NO_SERVICE) {
-                return LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_failed_no_yggdrasil_service"));
+                return CompletableFuture.completedFuture(LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_failed_no_yggdrasil_service")));
             }
             if (yggdrasilAuthenticationResult.getReason() == YggdrasilAuthenticationResult.Reason.SERVER_BREAKDOWN) {
-                return LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_yggdrasil_failed_server_down"));
+                return CompletableFuture.completedFuture(LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_yggdrasil_failed_server_down")));
             }
             if (yggdrasilAuthenticationResult.getReason() == YggdrasilAuthenticationResult.Reason.VALIDATION_FAILED) {
-                return LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_yggdrasil_failed_validation_failed"));
+                return CompletableFuture.completedFuture(LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_yggdrasil_failed_validation_failed")));
             }
             if (yggdrasilAuthenticationResult.getReason() != YggdrasilAuthenticationResult.Reason.ALLOWED ||
                     yggdrasilAuthenticationResult.getResponse() == null ||
                     yggdrasilAuthenticationResult.getServiceConfig().getId() == -1) {
-                return LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_yggdrasil_failed_unknown"));
+                return CompletableFuture.completedFuture(LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(yggdrasilAuthenticationResult, core.getLanguageHandler().getMessage("auth_yggdrasil_failed_unknown")));
             }
-        } catch (Exception e) {
-            LoggerProvider.getLogger().error("An exception occurred while processing the hasJoined request.", e);
-            return LoginAuthResult.ofDisallowedByYggdrasilAuthenticator(null, core.getLanguageHandler().getMessage("auth_yggdrasil_error"));
-        }
-
-        return checkIn(yggdrasilAuthenticationResult);
+            // 游戏内验证需要访问数据库，交给工作流线程池处理
+            return CompletableFuture.supplyAsync(() -> checkIn(yggdrasilAuthenticationResult), BaseFlows.getExecutorService());
+        }).thenCompose(Function.identity());
     }
 
     public LoginAuthResult checkIn(BaseServiceAuthenticationResult baseServiceAuthenticationResult) {
@@ -91,4 +135,64 @@ public class AuthHandler implements AuthAPI {
             return LoginAuthResult.ofDisallowedByValidateAuthenticator(baseServiceAuthenticationResult, null, core.getLanguageHandler().getMessage("auth_validate_error"));
         }
     }
+
+    /**
+     * 获得登录准入控制，配置变动时重建
+     * 重建前获得准入的登录请求仍然由旧的准入控制释放
+     */
+    public AdmissionController getAdmissionController() {
+        AdmissionConfig config = core.getPluginConfig().getAdmissionConfig();
+        AdmissionController controller = admissionController;
+        if (controller != null && config.equals(admissionConfig)) return controller;
+        synchronized (this) {
+            if (admissionController == null || !config.equals(admissionConfig)) {
+                admissionController = new AdmissionController(config.getMaxConcurrency(), config.getMaxQueued(), config.getQueueTimeout());
+                admissionConfig = config;
+            }
+            return admissionController;
+        }
+    }
+
+    /**
+     * 获得登录准入统计
+     */
+    public FlowsStatistics getFlowsStatistics() {
+        AdmissionController controller = getAdmissionController();
+        return new FlowsStatistics() {
+            @Override
+            public int getMaxConcurrency() {
+                return controller.getMaxConcurrency();
+            }
+
+            @Override
+            public int getMaxQueued() {
+                return controller.getMaxQueued();
+            }
+
+            @Override
+            public int getActive() {
+                return controller.getActive();
+            }
+
+            @Override
+            public int getQueued() {
+                return controller.getQueued();
+            }
+
+            @Override
+            public long getRejected() {
+                return controller.getRejected();
+            }
+
+            @Override
+            public long getCompleted() {
+                return controller.getCompleted();
+            }
+        };
+    }
+
+    @Override
+    public List<ServiceHealth> getServiceHealths() {
+        return yggdrasilAuthenticationService.getHealthTracker().getHealths();
+    }
 }
@@ -35,6 +35,10 @@ public class LoginAuthResult implements AuthResult {
         return new LoginAuthResult(null, kickMessage, Result.DISALLOW_BY_VALIDATE_AUTHENTICATOR, baseServiceAuthenticationResult, validateAuthenticationResult);
     }
 
+    public static LoginAuthResult ofServerBusy(String kickMessage) {
+        return new LoginAuthResult(null, kickMessage, Result.DISALLOW_BY_SERVER_BUSY, null, null);
+    }
+
     public static LoginAuthResult ofAllowed(BaseServiceAuthenticationResult baseServiceAuthenticationResult,
                                             ValidateAuthenticationResult validateAuthenticationResult,
                                             GameProfile gameProfile) {
@@ -0,0 +1,11 @@
+package moe.caa.multilogin.core.auth.service.yggdrasil;
+
+/**
+ * 表示验证服务器已被熔断
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(int serviceId) {
+        super("The yggdrasil service whose ID is " + serviceId + " is circuit open.", null, false, false);
+    }
+}
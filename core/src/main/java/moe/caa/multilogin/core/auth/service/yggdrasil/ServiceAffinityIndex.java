@@ -0,0 +1,65 @@
+package moe.caa.multilogin.core.auth.service.yggdrasil;
+
+import moe.caa.multilogin.core.database.DataCache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 用户名与验证服务器的亲和索引
+ * <p>
+ * 记录最近登录的在线名称曾经通过验证的验证服务器，登录时优先向这些验证服务器发起验证。
+ * 索引有容量上限，不在索引中的在线名称从数据库查询后再放入索引，每次验证通过后更新。
+ */
+public class ServiceAffinityIndex {
+    // 最多记录的在线名称数，超出时移除最久没有登录的
+    private static final int MAXIMUM_SIZE = 8192;
+
+    // 在线名称(小写) \ 验证服务器 ID 集合
+    private final DataCache<String, Set<Integer>> indexCache = new DataCache<>(MAXIMUM_SIZE, 0);
+
+    /**
+     * 获得在线名称曾经通过验证的验证服务器 ID
+     *
+     * @param onlineName 在线名称
+     * @return 验证服务器 ID 集合，不在索引中时返回 null
+     */
+    public Set<Integer> get(String onlineName) {
+        return indexCache.getIfPresent(onlineName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 放入从数据库查询到的验证服务器 ID
+     *
+     * @param onlineName 在线名称
+     * @param serviceIds 验证服务器 ID 集合
+     */
+    public synchronized void fill(String onlineName, Collection<Integer> serviceIds) {
+        if (serviceIds.isEmpty()) return;
+        String key = onlineName.toLowerCase(Locale.ROOT);
+        Set<Integer> ids = new HashSet<>(serviceIds);
+        Set<Integer> old = indexCache.getIfPresent(key);
+        if (old != null) ids.addAll(old);
+        indexCache.put(key, Collections.unmodifiableSet(ids), indexCache.generation());
+    }
+
+    /**
+     * 验证通过后调用，记录在线名称通过验证的验证服务器
+     *
+     * @param onlineName 在线名称
+     * @param serviceId  验证服务器 ID
+     */
+    public void update(String onlineName, int serviceId) {
+        fill(onlineName, Collections.singleton(serviceId));
+    }
+
+    /**
+     * 移除不存在的验证服务器
+     */
+    public synchronized void retain(Set<Integer> serviceIds) {
+        indexCache.invalidateIf(ids -> !serviceIds.containsAll(ids));
+    }
+}
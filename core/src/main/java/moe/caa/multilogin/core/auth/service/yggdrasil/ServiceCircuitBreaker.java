@@ -0,0 +1,139 @@
+package moe.caa.multilogin.core.auth.service.yggdrasil;
+
+import lombok.Getter;
+import moe.caa.multilogin.api.auth.ServiceHealth;
+import moe.caa.multilogin.core.configuration.CircuitBreakerConfig;
+
+/**
+ * 单个验证服务器的熔断器
+ * <p>
+ * 记录近期请求的成败，慢请求按失败记录，失败率过高或连续失败时熔断，熔断期间验证时跳过这个验证服务器。
+ * 熔断时间结束后进入半开状态，由后台探测决定恢复还是继续熔断。
+ */
+public class ServiceCircuitBreaker {
+    // 记录的近期请求数
+    private static final int WINDOW_SIZE = 20;
+    // 最长的熔断时间
+    private static final long MAX_OPEN_DURATION = 300_000;
+
+    @Getter
+    private final int serviceId;
+    private final boolean[] window = new boolean[WINDOW_SIZE];
+    private int index = 0;
+    private int count = 0;
+    private int failures = 0;
+    private int consecutiveFailures = 0;
+
+    @Getter
+    private volatile ServiceHealth.State state = ServiceHealth.State.CLOSED;
+    // 熔断结束时间
+    private long openUntil = 0;
+    // 下一次熔断的时长
+    private long openDuration = -1;
+
+    public ServiceCircuitBreaker(int serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    /**
+     * 返回当前是否允许向这个验证服务器发起验证
+     */
+    public boolean allowRequest() {
+        return state == ServiceHealth.State.CLOSED;
+    }
+
+    /**
+     * 记录一次成功的请求
+     */
+    public synchronized void recordSuccess() {
+        if (state != ServiceHealth.State.CLOSED) return;
+        push(false);
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * 记录一次失败的请求
+     *
+     * @param config 熔断器配置
+     * @return 这次失败是否导致熔断
+     */
+    public synchronized boolean recordFailure(CircuitBreakerConfig config) {
+        if (state != ServiceHealth.State.CLOSED) return false;
+        push(true);
+        consecutiveFailures++;
+        if (consecutiveFailures >= config.getMinimumCalls()
+                || (count >= config.getMinimumCalls() && failures * 100 >= count * config.getFailureRateThreshold())) {
+            open(config.getOpenDuration());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 熔断时间结束时进入半开状态
+     *
+     * @return 是否进入了半开状态，进入时需要发起探测
+     */
+    public synchronized boolean tryHalfOpen() {
+        if (state != ServiceHealth.State.OPEN || System.currentTimeMillis() < openUntil) return false;
+        state = ServiceHealth.State.HALF_OPEN;
+        return true;
+    }
+
+    /**
+     * 记录探测结果
+     *
+     * @param success 探测是否成功
+     * @param config  熔断器配置
+     */
+    public synchronized void recordProbe(boolean success, CircuitBreakerConfig config) {
+        if (state != ServiceHealth.State.HALF_OPEN) return;
+        if (success) {
+            reset();
+        } else {
+            // 持续故障时逐步延长熔断时间
+            open(Math.min(MAX_OPEN_DURATION, Math.max(openDuration, config.getOpenDuration()) * 2));
+        }
+    }
+
+    /**
+     * 获得下一次可以探测的时间
+     */
+    public synchronized long getOpenUntil() {
+        return openUntil;
+    }
+
+    /**
+     * 获得近期请求的失败率
+     */
+    public synchronized double getFailureRate() {
+        return count == 0 ? 0 : (double) failures / count;
+    }
+
+    private void open(long duration) {
+        state = ServiceHealth.State.OPEN;
+        openDuration = duration;
+        openUntil = System.currentTimeMillis() + duration;
+    }
+
+    private void reset() {
+        state = ServiceHealth.State.CLOSED;
+        index = 0;
+        count = 0;
+        failures = 0;
+        consecutiveFailures = 0;
+        openDuration = -1;
+        openUntil = 0;
+    }
+
+    private void push(boolean failure) {
+        if (count == WINDOW_SIZE) {
+            if (window[index]) failures--;
+        } else {
+            count++;
+        }
+        window[index] = failure;
+        if (failure) failures++;
+        index = (index + 1) % WINDOW_SIZE;
+    }
+}
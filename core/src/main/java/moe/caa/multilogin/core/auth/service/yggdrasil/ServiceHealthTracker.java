@@ -0,0 +1,152 @@
+package moe.caa.multilogin.core.auth.service.yggdrasil;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import moe.caa.multilogin.api.auth.ServiceHealth;
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.core.configuration.CircuitBreakerConfig;
+import moe.caa.multilogin.core.configuration.service.BaseServiceConfig;
+import moe.caa.multilogin.core.configuration.service.yggdrasil.BaseYggdrasilServiceConfig;
+import moe.caa.multilogin.core.main.MultiCore;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证服务器健康状态追踪
+ * <p>
+ * 为每个 Yggdrasil 验证服务器维护一个熔断器，熔断的验证服务器在半开时由后台发起探测。
+ */
+public class ServiceHealthTracker {
+    // 探测时使用的用户名
+    private static final String PROBE_USERNAME = "MultiLogin";
+
+    private final MultiCore core;
+    private final YggdrasilAuthenticationService service;
+
+    // serviceId \ 熔断器
+    private final Map<Integer, ServiceCircuitBreaker> breakerMap = new ConcurrentHashMap<>();
+
+    public ServiceHealthTracker(MultiCore core, YggdrasilAuthenticationService service) {
+        this.core = core;
+        this.service = service;
+    }
+
+    /**
+     * 返回当前是否允许向这个验证服务器发起验证
+     */
+    public boolean isAvailable(BaseYggdrasilServiceConfig config) {
+        if (!getConfig().isEnable()) return true;
+        ServiceCircuitBreaker breaker = breakerMap.get(config.getId());
+        return breaker == null || breaker.allowRequest();
+    }
+
+    /**
+     * 记录一次成功的请求，验证失败也是成功的请求
+     * 耗时超过慢请求阈值的请求按失败记录
+     *
+     * @param latency 请求耗时，单位毫秒
+     */
+    public void recordSuccess(BaseYggdrasilServiceConfig config, long latency) {
+        if (getConfig().isEnable() && getConfig().isSlowCall(latency)) {
+            recordFailure(config);
+            return;
+        }
+        getBreaker(config.getId()).recordSuccess();
+    }
+
+    /**
+     * 记录一次失败的请求
+     */
+    public void recordFailure(BaseYggdrasilServiceConfig config) {
+        if (!getConfig().isEnable()) return;
+        ServiceCircuitBreaker breaker = getBreaker(config.getId());
+        if (breaker.recordFailure(getConfig())) {
+            LoggerProvider.getLogger().warn(String.format(
+                    "The yggdrasil service whose ID is %d (%s) failed or responded slowly too often and will be skipped for %d ms.",
+                    config.getId(), config.getName(), breaker.getOpenUntil() - System.currentTimeMillis()));
+            scheduleProbe(breaker);
+        }
+    }
+
+    /**
+     * 获得所有 Yggdrasil 验证服务器的健康状态
+     */
+    public List<ServiceHealth> getHealths() {
+        List<ServiceHealth> result = new ArrayList<>();
+        for (BaseServiceConfig config : core.getPluginConfig().getServiceIdMap().values()) {
+            if (!(config instanceof BaseYggdrasilServiceConfig)) continue;
+            ServiceCircuitBreaker breaker = breakerMap.get(config.getId());
+            result.add(new Health(config.getId(), config.getName(),
+                    breaker == null ? ServiceHealth.State.CLOSED : breaker.getState(),
+                    breaker == null ? 0 : breaker.getFailureRate(),
+                    service.getLatencyTracker().getPercentile(config.getId(), 0.95)));
+        }
+        result.sort(Comparator.comparingInt(ServiceHealth::getServiceId));
+        return result;
+    }
+
+    /**
+     * 移除不存在的验证服务器
+     */
+    public void retain(Set<Integer> serviceIds) {
+        breakerMap.keySet().retainAll(serviceIds);
+    }
+
+    private void scheduleProbe(ServiceCircuitBreaker breaker) {
+        long delay = Math.max(0, breaker.getOpenUntil() - System.currentTimeMillis());
+        // 探测只发起异步请求，直接在计时线程中执行，不受工作流线程池繁忙的影响
+        CompletableFuture.runAsync(() -> probe(breaker),
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, Runnable::run));
+    }
+
+    private void probe(ServiceCircuitBreaker breaker) {
+        // 验证服务器已被移除
+        if (breakerMap.get(breaker.getServiceId()) != breaker) return;
+        BaseServiceConfig serviceConfig = core.getPluginConfig().getServiceIdMap().get(breaker.getServiceId());
+        if (!(serviceConfig instanceof BaseYggdrasilServiceConfig)) {
+            breakerMap.remove(breaker.getServiceId(), breaker);
+            return;
+        }
+        if (!breaker.tryHalfOpen()) return;
+        BaseYggdrasilServiceConfig config = (BaseYggdrasilServiceConfig) serviceConfig;
+
+        LoggerProvider.getLogger().debug(String.format("Probing the yggdrasil service whose ID is %d.", config.getId()));
+        long start = System.currentTimeMillis();
+        // 能正常响应的验证服务器会返回验证失败
+        new YggdrasilAuthenticationFlows(core, service.getClientRegistry().getClient(config),
+                PROBE_USERNAME, UUID.randomUUID().toString().replace("-", ""), null, config)
+                .callAsync().whenComplete((profile, throwable) -> {
+                    // 仍然响应缓慢的验证服务器继续熔断
+                    breaker.recordProbe(throwable == null && !getConfig().isSlowCall(System.currentTimeMillis() - start), getConfig());
+                    if (breaker.getState() == ServiceHealth.State.CLOSED) {
+                        LoggerProvider.getLogger().info(String.format(
+                                "The yggdrasil service whose ID is %d (%s) has recovered.", config.getId(), config.getName()));
+                    } else {
+                        LoggerProvider.getLogger().debug(String.format(
+                                "The yggdrasil service whose ID is %d is still unavailable.", config.getId()), throwable);
+                        scheduleProbe(breaker);
+                    }
+                });
+    }
+
+    private ServiceCircuitBreaker getBreaker(int serviceId) {
+        return breakerMap.computeIfAbsent(serviceId, ServiceCircuitBreaker::new);
+    }
+
+    private CircuitBreakerConfig getConfig() {
+        return core.getPluginConfig().getAuthStrategyConfig().getCircuitBreaker();
+    }
+
+    @AllArgsConstructor
+    @Getter
+    private static class Health implements ServiceHealth {
+        private final int serviceId;
+        private final String serviceName;
+        private final State state;
+        private final double failureRate;
+        private final long latencyP95;
+    }
+}
@@ -0,0 +1,75 @@
+package moe.caa.multilogin.core.auth.service.yggdrasil;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 记录各个验证服务器近期的响应时间
+ */
+public class ServiceLatencyTracker {
+    // 每个验证服务器保留的样本数
+    private static final int SAMPLE_SIZE = 64;
+    // 计算百分位数所需要的最少样本数
+    private static final int MIN_SAMPLES = 8;
+
+    // serviceId \ Samples
+    private final Map<Integer, Samples> samplesMap = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次响应时间
+     *
+     * @param serviceId 验证服务器 ID
+     * @param millis    响应时间
+     */
+    public void record(int serviceId, long millis) {
+        samplesMap.computeIfAbsent(serviceId, i -> new Samples()).add(millis);
+    }
+
+    /**
+     * 获得验证服务器近期响应时间的百分位数
+     *
+     * @param serviceId  验证服务器 ID
+     * @param percentile 百分位，如 0.95
+     * @return 响应时间，样本不足时返回 -1
+     */
+    public long getPercentile(int serviceId, double percentile) {
+        Samples samples = samplesMap.get(serviceId);
+        if (samples == null) return -1;
+        return samples.percentile(percentile);
+    }
+
+    /**
+     * 移除不存在的验证服务器
+     */
+    public void retain(Iterable<Integer> serviceIds) {
+        Set<Integer> keep = new HashSet<>();
+        serviceIds.forEach(keep::add);
+        samplesMap.keySet().retainAll(keep);
+    }
+
+    private static class Samples {
+        private final long[] ring = new long[SAMPLE_SIZE];
+        private int index = 0;
+        private int count = 0;
+
+        private synchronized void add(long millis) {
+            ring[index] = millis;
+            index = (index + 1) % SAMPLE_SIZE;
+            if (count < SAMPLE_SIZE) count++;
+        }
+
+        private long percentile(double percentile) {
+            long[] copy;
+            synchronized (this) {
+                if (count < MIN_SAMPLES) return -1;
+                copy = Arrays.copyOf(ring, count);
+            }
+            Arrays.sort(copy);
+            int i = (int) Math.ceil(percentile * copy.length) - 1;
+            return copy[Math.max(0, Math.min(i, copy.length - 1))];
+        }
+    }
+}
@@ -11,7 +11,7 @@ import java.util.UUID;
 public class UnmodifiableGameProfile extends GameProfile {
 
     public UnmodifiableGameProfile(UUID id, String name, Map<String, Property> propertyMap) {
-        super(id, name, propertyMap);
+        super(id, name, unmodifiable(propertyMap));
     }
 
     @Override
@@ -29,11 +29,12 @@ public class UnmodifiableGameProfile extends GameProfile {
         throw new UnsupportedOperationException();
     }
 
-    @Override
-    public Map<String, Property> getPropertyMap() {
-        Map<String, Property> map = new HashMap<>();
-        for (Map.Entry<String, Property> entry : super.getPropertyMap().entrySet()) {
-            map.put(entry.getKey(), UnmodifiableProperty.unmodifiable(entry.getValue()));
+    // 构建时只包装一次，避免每次读取都复制
+    private static Map<String, Property> unmodifiable(Map<String, Property> propertyMap) {
+        Map<String, Property> map = new HashMap<>(propertyMap.size() * 2);
+        for (Map.Entry<String, Property> entry : propertyMap.entrySet()) {
+            Property value = entry.getValue();
+            map.put(entry.getKey(), value instanceof UnmodifiableProperty ? value : UnmodifiableProperty.unmodifiable(value));
         }
         return Collections.unmodifiableMap(map);
     }
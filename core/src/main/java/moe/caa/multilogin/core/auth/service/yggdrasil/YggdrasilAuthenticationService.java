@@ -1,15 +1,22 @@
 package moe.caa.multilogin.core.auth.service.yggdrasil;
 
+import lombok.Getter;
+import lombok.SneakyThrows;
+import moe.caa.multilogin.api.auth.GameProfile;
 import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.util.Pair;
 import moe.caa.multilogin.api.util.ValueUtil;
+import moe.caa.multilogin.core.configuration.AuthStrategyConfig;
 import moe.caa.multilogin.core.configuration.service.BaseServiceConfig;
 import moe.caa.multilogin.core.configuration.service.yggdrasil.BaseYggdrasilServiceConfig;
 import moe.caa.multilogin.core.main.MultiCore;
-import moe.caa.multilogin.flows.workflows.EntrustFlows;
-import moe.caa.multilogin.flows.workflows.Signal;
+import moe.caa.multilogin.flows.workflows.BaseFlows;
 
-import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -17,90 +24,245 @@ import java.util.stream.Collectors;
  */
 public class YggdrasilAuthenticationService {
     private final MultiCore core;
+    @Getter
+    private final YggdrasilClientRegistry clientRegistry;
+    @Getter
+    private final ServiceLatencyTracker latencyTracker;
+    @Getter
+    private final ServiceAffinityIndex affinityIndex;
+    @Getter
+    private final ServiceHealthTracker healthTracker;
 
     public YggdrasilAuthenticationService(MultiCore core) {
         this.core = core;
+        this.clientRegistry = new YggdrasilClientRegistry(core);
+        this.latencyTracker = new ServiceLatencyTracker();
+        this.affinityIndex = new ServiceAffinityIndex();
+        this.healthTracker = new ServiceHealthTracker(core, this);
     }
 
     /**
      * 开始验证
      */
-    public YggdrasilAuthenticationResult hasJoined(String username, String serverId, String ip) throws SQLException {
+    public YggdrasilAuthenticationResult hasJoined(String username, String serverId, String ip) {
+        return hasJoinedAsync(username, serverId, ip).join();
+    }
+
+    /**
+     * 开始异步验证
+     * <p>
+     * 数据库查询在工作流线程池中进行，hasJoined 请求由 OkHttp 异步回调，期间不会有线程等待网络响应。
+     * 优先向亲和索引中玩家曾经通过验证的验证服务器发起验证，其他验证服务器按照验证策略在之后发起。
+     */
+    public CompletableFuture<YggdrasilAuthenticationResult> hasJoinedAsync(String username, String serverId, String ip) {
         final Set<Integer> ids = core.getPluginConfig().getServiceIdMap().entrySet().stream()
                 .filter(e -> e.getValue() instanceof BaseYggdrasilServiceConfig)
                 .map(Map.Entry::getKey).collect(Collectors.toSet());
-        if (ids.size() == 0) return YggdrasilAuthenticationResult.ofNoService();
+        if (ids.size() == 0) return CompletableFuture.completedFuture(YggdrasilAuthenticationResult.ofNoService());
+
+        return CompletableFuture.supplyAsync(() -> getPrimaries(username, ids), BaseFlows.getExecutorService())
+                .thenCompose(primaries -> {
+                    // 次要的验证服务器ID表
+                    // 在HasJoined验证时最后开始验证
+                    Set<Integer> secondaries = ids.stream().filter(i -> !primaries.contains(i)).collect(Collectors.toSet());
+                    long hedgeDelay = getHedgeDelay(primaries);
 
+                    LoggerProvider.getLogger().debug(String.format(
+                            "%s's hasJoined verification order: [%s], [%s], hedge delay: %d ms", username,
+                            ValueUtil.join(", ", ", ", primaries),
+                            ValueUtil.join(", ", ", ", secondaries),
+                            hedgeDelay
+                    ));
 
-        // 主要的验证服务器ID表
-        // 在HasJoined验证时最先开始验证
+                    return hasJoined0(username, serverId, ip, primaries, secondaries, hedgeDelay).whenComplete((result, throwable) -> {
+                        if (result != null && result.getReason() == YggdrasilAuthenticationResult.Reason.ALLOWED) {
+                            affinityIndex.update(username, result.getServiceConfig().getId());
+                        }
+                    });
+                });
+    }
+
+    /**
+     * 主要的验证服务器ID表
+     * 在HasJoined验证时最先开始验证
+     */
+    @SneakyThrows
+    private Set<Integer> getPrimaries(String username, Set<Integer> ids) {
         Set<Integer> primaries = new HashSet<>();
 
         // 如果只添加了一个验证服务器，那么就直接把它置为 primary
-        // 否则就读数据库选出最近的验证服务器作为 primary
+        // 否则使用亲和索引中记录的验证服务器，没有记录时读数据库选出最近的验证服务器作为 primary
         if (ids.size() == 1) {
             primaries.add(ids.iterator().next());
-        } else {
-            // 首先获取数据库里面保存的他的 inGameUUID
-            UUID inGameUUID = core.getSqlManager().getInGameProfileTable().getInGameUUIDIgnoreCase(username);
-
-            // 如果获取到了它的 inGameUUID，就去获取 Yggdrasil ID
-            if (inGameUUID != null) {
-                // 可能有多个
-                primaries.addAll(core.getSqlManager().getUserDataTable().getOnlineServiceIds(inGameUUID));
+            return primaries;
+        }
+        Set<Integer> indexed = affinityIndex.get(username);
+        if (indexed != null) {
+            for (Integer id : indexed) {
+                if (ids.contains(id)) primaries.add(id);
             }
+            if (!primaries.isEmpty()) return primaries;
         }
 
-        // 次要的验证服务器ID表
-        // 在HasJoined验证时最后开始验证
-        Set<Integer> secondaries = ids.stream().filter(i -> !primaries.contains(i)).collect(Collectors.toSet());
-
-        LoggerProvider.getLogger().debug(String.format(
-                "%s's hasJoined verification order: [%s], [%s]", username,
-                ValueUtil.join(", ", ", ", primaries),
-                ValueUtil.join(", ", ", ", secondaries)
-        ));
-
-        boolean serverBreakdown = false;
-        if (primaries.size() != 0) {
-            YggdrasilAuthenticationResult result = hasJoined0(username, serverId, ip, primaries);
-            if (result.getReason() == YggdrasilAuthenticationResult.Reason.ALLOWED) return result;
-            if (result.getReason() == YggdrasilAuthenticationResult.Reason.SERVER_BREAKDOWN) {
-                serverBreakdown = true;
+        // 首先获取数据库里面保存的他的 inGameUUID
+        UUID inGameUUID = core.getSqlManager().getInGameProfileTable().getInGameUUIDIgnoreCase(username);
+
+        // 如果获取到了它的 inGameUUID，就去获取 Yggdrasil ID
+        if (inGameUUID != null) {
+            // 可能有多个
+            Set<Integer> onlineServiceIds = core.getSqlManager().getUserDataTable().getOnlineServiceIds(inGameUUID);
+            for (Integer id : onlineServiceIds) {
+                if (ids.contains(id)) primaries.add(id);
             }
+            // 放入索引，下次登录无需再查询数据库
+            affinityIndex.fill(username, onlineServiceIds);
         }
-        if (secondaries.size() != 0) {
-            YggdrasilAuthenticationResult result = hasJoined0(username, serverId, ip, secondaries);
-            if (result.getReason() == YggdrasilAuthenticationResult.Reason.ALLOWED) return result;
-            if (result.getReason() == YggdrasilAuthenticationResult.Reason.SERVER_BREAKDOWN) {
-                serverBreakdown = true;
+        return primaries;
+    }
+
+    /**
+     * 获得发起次要验证服务器验证前需要等待的时间
+     *
+     * @return 等待时间，-1 表示等待主要验证服务器全部验证失败
+     */
+    private long getHedgeDelay(Set<Integer> primaries) {
+        AuthStrategyConfig config = core.getPluginConfig().getAuthStrategyConfig();
+        if (config.getStrategy() != AuthStrategyConfig.AuthStrategy.HEDGED) return -1;
+        if (config.getHedgeDelay() >= 0) return config.getHedgeDelay();
+
+        long delay = -1;
+        for (Integer id : primaries) {
+            delay = Math.max(delay, latencyTracker.getPercentile(id, 0.95));
+        }
+        return delay < 0 ? config.getDefaultHedgeDelay() : delay;
+    }
+
+    /**
+     * 重新加载后调用，清理失效的验证服务器记录
+     */
+    public void refresh() {
+        Set<Integer> ids = core.getPluginConfig().getServiceIdMap().keySet();
+        affinityIndex.retain(ids);
+        latencyTracker.retain(ids);
+        healthTracker.retain(ids);
+    }
+
+    private CompletableFuture<YggdrasilAuthenticationResult> hasJoined0(String username, String serverId, String ip,
+                                                                        Set<Integer> primaries, Set<Integer> secondaries, long hedgeDelay) {
+        final HasJoinedContext context = new HasJoinedContext(username, serverId, ip);
+        List<BaseYggdrasilServiceConfig> primaryConfigs = getServiceConfigs(context, primaries);
+        List<BaseYggdrasilServiceConfig> secondaryConfigs = getServiceConfigs(context, secondaries);
+        if (primaryConfigs.isEmpty() && secondaryConfigs.isEmpty()) {
+            return CompletableFuture.completedFuture(summarize(context));
+        }
+
+        final CompletableFuture<YggdrasilAuthenticationResult> future = new CompletableFuture<>();
+        // 存放当前还有多少验证服务器没有返回结果，额外的 1 表示次要验证服务器还没有发起验证
+        final AtomicInteger remaining = new AtomicInteger(primaryConfigs.size() + 1);
+        // 存放主要验证服务器还有多少没有返回结果
+        final AtomicInteger primaryRemaining = new AtomicInteger(primaryConfigs.size());
+        // 次要验证服务器是否已经发起验证
+        final AtomicBoolean secondariesFired = new AtomicBoolean(false);
+        // 存放所有正在进行的请求，有结果后取消其余请求
+        final List<CompletableFuture<GameProfile>> calls = new ArrayList<>();
+        future.whenComplete((result, throwable) -> {
+            synchronized (calls) {
+                for (CompletableFuture<GameProfile> call : calls) {
+                    call.cancel(true);
+                }
             }
+        });
+
+        Runnable fireSecondaries = () -> {
+            if (future.isDone() || !secondariesFired.compareAndSet(false, true)) return;
+            remaining.addAndGet(secondaryConfigs.size());
+            for (BaseYggdrasilServiceConfig config : secondaryConfigs) {
+                call(context, future, calls, config, remaining, null);
+            }
+            // 次要验证服务器已经全部发起
+            if (remaining.decrementAndGet() == 0 && !future.isDone()) {
+                future.complete(summarize(context));
+            }
+        };
+
+        for (BaseYggdrasilServiceConfig config : primaryConfigs) {
+            call(context, future, calls, config, remaining, () -> {
+                // 主要验证服务器全部验证失败，立即发起次要验证服务器的验证
+                if (primaryRemaining.decrementAndGet() == 0) fireSecondaries.run();
+            });
         }
-        if (serverBreakdown) return YggdrasilAuthenticationResult.ofServerBreakdown();
-        return YggdrasilAuthenticationResult.ofValidationFailed();
+        if (primaryConfigs.isEmpty()) {
+            fireSecondaries.run();
+        } else if (hedgeDelay >= 0 && !secondaryConfigs.isEmpty()) {
+            // 超过对冲延迟后发起次要验证服务器的验证
+            // 只发起异步请求，直接在计时线程中执行，工作流线程池繁忙时也能按时对冲
+            CompletableFuture.runAsync(fireSecondaries,
+                    CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS, Runnable::run));
+        }
+        return future;
+    }
+
+    private void call(HasJoinedContext context, CompletableFuture<YggdrasilAuthenticationResult> future,
+                      List<CompletableFuture<GameProfile>> calls, BaseYggdrasilServiceConfig config,
+                      AtomicInteger remaining, Runnable onFailed) {
+        final long start = System.currentTimeMillis();
+        CompletableFuture<GameProfile> call = new YggdrasilAuthenticationFlows(core, clientRegistry.getClient(config),
+                context.getUsername(), context.getServerId(), context.getIp(), config).callAsync();
+        synchronized (calls) {
+            if (future.isDone()) {
+                call.cancel(true);
+            } else {
+                calls.add(call);
+            }
+        }
+        call.whenComplete((profile, throwable) -> {
+            boolean passed = false;
+            if (throwable != null) {
+                // 已经有结果后被取消的请求不算作验证服务器故障
+                if (!call.isCancelled()) {
+                    healthTracker.recordFailure(config);
+                    if (!future.isDone()) {
+                        context.getServiceUnavailable().put(config, throwable);
+                    }
+                }
+            } else {
+                long latency = System.currentTimeMillis() - start;
+                latencyTracker.record(config.getId(), latency);
+                healthTracker.recordSuccess(config, latency);
+                if (profile != null && profile.getId() != null) {
+                    passed = true;
+                    // 第一个通过验证的验证服务器作为结果
+                    if (context.getResponse().compareAndSet(null, new Pair<>(profile, config))) {
+                        future.complete(YggdrasilAuthenticationResult.ofAllowed(profile, config));
+                    }
+                } else {
+                    context.getAuthenticationFailed().add(config.getId());
+                }
+            }
+            if (!passed && onFailed != null) onFailed.run();
+            // 没人能完成验证
+            if (remaining.decrementAndGet() == 0 && !future.isDone()) {
+                future.complete(summarize(context));
+            }
+        });
     }
 
-    private YggdrasilAuthenticationResult hasJoined0(String username, String serverId, String ip, Set<Integer> ids) {
-        Set<BaseYggdrasilServiceConfig> serviceConfigs = new HashSet<>();
+    private List<BaseYggdrasilServiceConfig> getServiceConfigs(HasJoinedContext context, Set<Integer> ids) {
+        List<BaseYggdrasilServiceConfig> serviceConfigs = new ArrayList<>();
         for (Integer id : ids) {
             BaseServiceConfig config = core.getPluginConfig().getServiceIdMap().get(id);
-            if (config instanceof BaseYggdrasilServiceConfig) {
-                serviceConfigs.add((BaseYggdrasilServiceConfig) config);
+            if (!(config instanceof BaseYggdrasilServiceConfig)) continue;
+            // 跳过已被熔断的验证服务器
+            if (!healthTracker.isAvailable((BaseYggdrasilServiceConfig) config)) {
+                context.getServiceUnavailable().put((BaseYggdrasilServiceConfig) config, new CircuitOpenException(id));
+                continue;
             }
+            serviceConfigs.add((BaseYggdrasilServiceConfig) config);
         }
-        EntrustFlows<HasJoinedContext> flows = new EntrustFlows<>(serviceConfigs.stream()
-                .map(i -> new YggdrasilAuthenticationFlows(core, username, serverId, ip, i))
-                .collect(Collectors.toList())
-        );
+        return serviceConfigs;
+    }
 
-        final HasJoinedContext context = new HasJoinedContext(username, serverId, ip);
-        final Signal run = flows.run(context);
-        if (run == Signal.PASSED) {
-            return YggdrasilAuthenticationResult.ofAllowed(
-                    context.getResponse().get().getValue1(),
-                    context.getResponse().get().getValue2()
-            );
-        }
+    private YggdrasilAuthenticationResult summarize(HasJoinedContext context) {
         if (context.getServiceUnavailable().size() != 0) {
             for (Map.Entry<BaseYggdrasilServiceConfig, Throwable> entry : context.getServiceUnavailable().entrySet()) {
                 LoggerProvider.getLogger().debug("An exception occurred during authentication of the yggdrasil service whose ID is " + entry.getKey().getId(), entry.getValue());
@@ -0,0 +1,114 @@
+package moe.caa.multilogin.core.auth.service.yggdrasil;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.core.configuration.AuthStrategyConfig;
+import moe.caa.multilogin.core.configuration.ProxyConfig;
+import moe.caa.multilogin.core.configuration.service.BaseServiceConfig;
+import moe.caa.multilogin.core.configuration.service.yggdrasil.BaseYggdrasilServiceConfig;
+import moe.caa.multilogin.core.ohc.LoggingInterceptor;
+import moe.caa.multilogin.core.main.MultiCore;
+import moe.caa.multilogin.core.ohc.RetryInterceptor;
+import moe.caa.multilogin.core.ohc.RetryPolicy;
+import okhttp3.OkHttpClient;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Yggdrasil hasJoined 请求客户端注册表
+ * <p>
+ * 客户端从 {@link moe.caa.multilogin.core.ohc.HttpClientFactory} 的根客户端构建，与其他请求共用同一个连接池和调度器，
+ * 保持长连接以避免每次登录都重新握手。
+ * 每个验证服务的客户端只在超时、代理或重试设置变动时才会重建。
+ */
+public class YggdrasilClientRegistry {
+    private final MultiCore core;
+
+    // serviceId \ Entry
+    private final Map<Integer, Entry> clientMap = new ConcurrentHashMap<>();
+
+    public YggdrasilClientRegistry(MultiCore core) {
+        this.core = core;
+    }
+
+    /**
+     * 获得验证服务对应的客户端，设置变动时重建
+     *
+     * @param config 验证服务配置
+     * @return 客户端
+     */
+    public OkHttpClient getClient(BaseYggdrasilServiceConfig config) {
+        Settings settings = Settings.of(config, core.getPluginConfig().getAuthStrategyConfig());
+        Entry entry = clientMap.get(config.getId());
+        if (entry != null && entry.settings.equals(settings)) return entry.client;
+        return clientMap.compute(config.getId(), (id, old) -> {
+            if (old != null && old.settings.equals(settings)) return old;
+            if (old != null) {
+                LoggerProvider.getLogger().debug(String.format("Rebuilding the http client of the yggdrasil service whose ID is %d.", id));
+            }
+            return new Entry(settings, buildClient(settings));
+        }).client;
+    }
+
+    /**
+     * 重新加载后调用，移除失效的验证服务客户端并重建设置变动的客户端
+     *
+     * @param serviceIdMap 新的验证服务表
+     */
+    public void refresh(Map<Integer, BaseServiceConfig> serviceIdMap) {
+        clientMap.keySet().removeIf(id -> !(serviceIdMap.get(id) instanceof BaseYggdrasilServiceConfig));
+        for (BaseServiceConfig config : serviceIdMap.values()) {
+            if (config instanceof BaseYggdrasilServiceConfig) {
+                getClient((BaseYggdrasilServiceConfig) config);
+            }
+        }
+    }
+
+    /**
+     * 移除所有客户端，共用的连接池和调度器由 HttpClientFactory 关闭
+     */
+    public void close() {
+        clientMap.clear();
+    }
+
+    private OkHttpClient buildClient(Settings settings) {
+        return core.getHttpClientFactory().getRootClient().newBuilder()
+                .addInterceptor(new RetryInterceptor(new RetryPolicy(settings.retry, settings.retryDelay,
+                        settings.retryDeadline, settings.retryBudget)))
+                .addInterceptor(new LoggingInterceptor())
+                .writeTimeout(Duration.ofMillis(settings.timeout))
+                .readTimeout(Duration.ofMillis(settings.timeout))
+                .connectTimeout(Duration.ofMillis(settings.timeout))
+                .proxy(settings.proxy.getProxy())
+                .proxyAuthenticator(settings.proxy.getProxyAuthenticator())
+                .build();
+    }
+
+    /**
+     * 影响客户端构建的设置
+     */
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class Settings {
+        private final int timeout;
+        private final int retry;
+        private final long retryDelay;
+        private final long retryDeadline;
+        private final int retryBudget;
+        private final ProxyConfig proxy;
+
+        private static Settings of(BaseYggdrasilServiceConfig config, AuthStrategyConfig strategyConfig) {
+            return new Settings(config.getTimeout(), config.getRetry(), config.getRetryDelay(),
+                    strategyConfig.getRetryDeadline(), strategyConfig.getRetryBudget(), config.getAuthProxy());
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final Settings settings;
+        private final OkHttpClient client;
+    }
+}
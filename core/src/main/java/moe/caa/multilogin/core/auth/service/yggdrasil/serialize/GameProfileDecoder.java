@@ -0,0 +1,145 @@
+package moe.caa.multilogin.core.auth.service.yggdrasil.serialize;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import moe.caa.multilogin.api.auth.GameProfile;
+import moe.caa.multilogin.api.auth.Property;
+import moe.caa.multilogin.api.util.ValueUtil;
+import moe.caa.multilogin.core.auth.service.yggdrasil.UnmodifiableGameProfile;
+import okio.BufferedSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * GameProfile 的流式解码程序
+ * <p>
+ * 直接从响应体中读取 hasJoined 返回的档案，不构建中间的字符串和 JSON 树，格式与 {@link GameProfileSerializer} 一致。
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class GameProfileDecoder {
+
+    /**
+     * 从响应体中读取档案
+     *
+     * @param source 响应体
+     * @return 档案，响应体为空时返回 null
+     */
+    public static GameProfile decode(BufferedSource source) throws IOException {
+        if (source.exhausted()) return null;
+        JsonReader reader = new JsonReader(new InputStreamReader(source.inputStream(), StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                return null;
+            }
+            return readProfile(reader);
+        } catch (EOFException e) {
+            // 只有空白字符
+            return null;
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    private static GameProfile readProfile(JsonReader reader) throws IOException {
+        UUID id = null;
+        String name = null;
+        Map<String, Property> propertyMap = new HashMap<>(4);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    String idString = nextStringOrNull(reader);
+                    id = idString == null ? null : ValueUtil.getUuidOrNull(idString);
+                    break;
+                case "name":
+                    name = nextStringOrNull(reader);
+                    break;
+                case "properties":
+                    readProperties(reader, propertyMap);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new UnmodifiableGameProfile(id, name, propertyMap);
+    }
+
+    private static void readProperties(JsonReader reader, Map<String, Property> propertyMap) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Property property = readProperty(reader);
+                if (property != null) propertyMap.put(property.getName(), property);
+            }
+            reader.endArray();
+        } else if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Property property = readProperty(reader);
+                    if (property != null) propertyMap.put(key, property);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    private static Property readProperty(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String name = null;
+        String value = null;
+        String signature = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    name = nextStringOrNull(reader);
+                    break;
+                case "value":
+                    value = nextStringOrNull(reader);
+                    break;
+                case "signature":
+                    signature = nextStringOrNull(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new UnmodifiableGameProfile.UnmodifiableProperty(name, value, signature);
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -1,15 +1,18 @@
 package moe.caa.multilogin.core.auth.validate;
 
 import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.util.Pair;
 import moe.caa.multilogin.core.auth.service.BaseServiceAuthenticationResult;
 import moe.caa.multilogin.core.auth.validate.entry.AssignInGameFlows;
 import moe.caa.multilogin.core.auth.validate.entry.InitialLoginDataFlows;
 import moe.caa.multilogin.core.auth.validate.entry.NameAllowedRegularCheckFlows;
 import moe.caa.multilogin.core.auth.validate.entry.WhitelistCheckFlows;
+import moe.caa.multilogin.core.database.table.LoginData;
 import moe.caa.multilogin.core.main.MultiCore;
 import moe.caa.multilogin.flows.workflows.SequenceFlows;
 import moe.caa.multilogin.flows.workflows.Signal;
 
+import java.sql.SQLException;
 import java.util.Arrays;
 
 /**
@@ -36,10 +39,32 @@ public class ValidateAuthenticationService {
 
     /**
      * 开始游戏内验证
+     * <p>
+     * 登录数据在开始时一次读出，验证流程只修改内存中的数据，结束后在同一个事务中写回。
      */
-    public ValidateAuthenticationResult checkIn(BaseServiceAuthenticationResult baseServiceAuthenticationResult) {
-        ValidateContext context = new ValidateContext(baseServiceAuthenticationResult);
-        Signal run = sequenceFlows.run(context);
+    public ValidateAuthenticationResult checkIn(BaseServiceAuthenticationResult baseServiceAuthenticationResult) throws SQLException {
+        LoginData loginData = core.getSqlManager().getLoginDataAccess().load(
+                baseServiceAuthenticationResult.getResponse().getId(),
+                baseServiceAuthenticationResult.getServiceConfig().getId()
+        );
+        ValidateContext context = new ValidateContext(baseServiceAuthenticationResult, loginData);
+        Signal run;
+        try {
+            run = sequenceFlows.run(context);
+            // 被拒绝的登录也需要保留登录记录和白名单的修改
+            boolean profileWritten = core.getSqlManager().getLoginDataAccess().apply(loginData);
+            if (loginData.isInGameUUIDClaimed()) {
+                // 新分配的 UUID 在写入时可能已被占用并重新分配
+                context.getInGameProfile().setId(loginData.getInGameUUID());
+            }
+            if (!profileWritten) {
+                return ValidateAuthenticationResult.ofDisallowed(core.getLanguageHandler().getMessage("auth_validate_failed_username_repeated",
+                        new Pair<>("name", baseServiceAuthenticationResult.getResponse().getName())
+                ));
+            }
+        } finally {
+            core.getSqlManager().getLoginDataAccess().release(loginData);
+        }
         if (run == Signal.PASSED) {
             if (context.isNeedWait()) {
                 try {
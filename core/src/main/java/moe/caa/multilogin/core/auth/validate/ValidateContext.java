@@ -3,6 +3,7 @@ package moe.caa.multilogin.core.auth.validate;
 import lombok.Data;
 import moe.caa.multilogin.api.auth.GameProfile;
 import moe.caa.multilogin.core.auth.service.BaseServiceAuthenticationResult;
+import moe.caa.multilogin.core.database.table.LoginData;
 
 /**
  * 游戏内验证消息上下文
@@ -12,13 +13,15 @@ public class ValidateContext {
     private final BaseServiceAuthenticationResult baseServiceAuthenticationResult;
 
     private final GameProfile inGameProfile;
+    private final LoginData loginData;
     private String disallowMessage;
     private boolean needWait;
     private boolean onlineNameUpdated = false;
 
 
-    protected ValidateContext(BaseServiceAuthenticationResult baseServiceAuthenticationResult) {
+    protected ValidateContext(BaseServiceAuthenticationResult baseServiceAuthenticationResult, LoginData loginData) {
         this.baseServiceAuthenticationResult = baseServiceAuthenticationResult;
         this.inGameProfile = baseServiceAuthenticationResult.getResponse().clone();
+        this.loginData = loginData;
     }
 }
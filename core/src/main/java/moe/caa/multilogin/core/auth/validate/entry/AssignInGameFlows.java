@@ -6,11 +6,13 @@ import moe.caa.multilogin.api.plugin.IPlayer;
 import moe.caa.multilogin.api.util.Pair;
 import moe.caa.multilogin.api.util.ValueUtil;
 import moe.caa.multilogin.core.auth.validate.ValidateContext;
+import moe.caa.multilogin.core.database.table.LoginData;
 import moe.caa.multilogin.core.main.MultiCore;
 import moe.caa.multilogin.flows.workflows.BaseFlows;
 import moe.caa.multilogin.flows.workflows.Signal;
 
-import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -26,12 +28,10 @@ public class AssignInGameFlows extends BaseFlows<ValidateContext> {
     @SneakyThrows
     @Override
     public Signal run(ValidateContext validateContext) {
+        LoginData loginData = validateContext.getLoginData();
 
-        // 从数据库里面读登录档案的游戏内 UUID
-        UUID inGameUUID = core.getSqlManager().getUserDataTable().getInGameUUID(
-                validateContext.getBaseServiceAuthenticationResult().getResponse().getId(),
-                validateContext.getBaseServiceAuthenticationResult().getServiceConfig().getId()
-        );
+        // 登录档案的游戏内 UUID 已经随登录数据一起读出
+        UUID inGameUUID = loginData.getInGameUUID();
 
         // 如果这个 UUID 不存在，表示是个预新玩家或是档案被清理的新玩家。这时需要分配个全新的身份卡给它。
         String loginName = validateContext.getBaseServiceAuthenticationResult().getResponse().getName();
@@ -40,55 +40,43 @@ public class AssignInGameFlows extends BaseFlows<ValidateContext> {
             inGameUUID = validateContext.getBaseServiceAuthenticationResult().getServiceConfig().getInitUUID()
                     .generateUUID(validateContext.getBaseServiceAuthenticationResult().getResponse().getId(), loginName);
 
-            // 需要线程安全
-            synchronized (AssignInGameFlows.class) {
-                // 取没有被占用的 UUID
-                while (core.getSqlManager().getInGameProfileTable().dataExists(inGameUUID)) {
-                    LoggerProvider.getLogger().warn(String.format("UUID %s has been used and will take a random value.", inGameUUID.toString()));
-                    inGameUUID = UUID.randomUUID();
-                }
-                // 身份卡UUID数据被确定
-                // 更新数据
-                core.getSqlManager().getUserDataTable().setInGameUUID(
-                        validateContext.getBaseServiceAuthenticationResult().getResponse().getId(),
-                        validateContext.getBaseServiceAuthenticationResult().getServiceConfig().getId(),
-                        inGameUUID);
+            // 取没有被占用的 UUID，写入时由数据库主键保证线程安全，也适用于多个代理共用一个数据库
+            while (core.getSqlManager().getInGameProfileTable().dataExists(inGameUUID)) {
+                LoggerProvider.getLogger().warn(String.format("UUID %s has been used and will take a random value.", inGameUUID.toString()));
+                inGameUUID = UUID.randomUUID();
             }
+            // 身份卡UUID数据被确定，验证结束后占用并写入
+            loginData.claimInGameUUID(inGameUUID);
         }
         if (core.getPluginConfig().isAutoNameChange() && validateContext.isOnlineNameUpdated()) {
-            String username = core.getSqlManager().getInGameProfileTable().getUsername(inGameUUID);
-            if (!ValueUtil.isEmpty(username)) {
-                core.getSqlManager().getInGameProfileTable().eraseUsername(username);
-            }
+            loginData.eraseUsername();
         }
 
         // 身份卡UUID数据存在，看看数据库中有没有对应的记录
-        boolean exist = core.getSqlManager().getInGameProfileTable().dataExists(inGameUUID);
-        if (exist) {
-            String username = core.getSqlManager().getInGameProfileTable().getUsername(inGameUUID);
-            if (!ValueUtil.isEmpty(username)) {
-                validateContext.getInGameProfile().setId(inGameUUID);
-                validateContext.getInGameProfile().setName(username);
-                return Signal.PASSED;
-            }
+        if (loginData.isProfileExists() && !ValueUtil.isEmpty(loginData.getInGameUsername())) {
+            validateContext.getInGameProfile().setId(inGameUUID);
+            validateContext.getInGameProfile().setName(loginData.getInGameUsername());
+            return Signal.PASSED;
         }
 
         String fixName = loginName;
         if (core.getPluginConfig().isNameCorrect()) {
             int i = 0;
             boolean modified = false;
+            // 一次查出所有可能冲突的名字，在内存中找第一个空闲的后缀
+            Map<String, UUID> used = core.getSqlManager().getInGameProfileTable().getUsernamesWithSuffix(loginName);
             UUID ownerUUID;
-            while ((ownerUUID = core.getSqlManager().getInGameProfileTable().getInGameUUIDIgnoreCase(fixName)) != null) {
-                if(ownerUUID.equals(inGameUUID)) break;
+            while (((ownerUUID = used.get(fixName.toLowerCase(Locale.ROOT))) != null && !ownerUUID.equals(inGameUUID))
+                    || !core.getSqlManager().getLoginDataAccess().reserveUsername(loginData, fixName)) {
                 fixName = loginName + ++i;
                 modified = true;
             }
             if(modified){
-                UUID finalInGameUUID = inGameUUID;
                 String finalFixName = fixName;
                 LoggerProvider.getLogger().warn(String.format("The name %s is occupied, change it to %s.", loginName, fixName));
                 core.getPlugin().getRunServer().getScheduler().runTaskAsync(() -> {
-                    IPlayer player = core.getPlugin().getRunServer().getPlayerManager().getPlayer(finalInGameUUID);
+                    // 写入时 UUID 可能被重新分配，以写入后的为准
+                    IPlayer player = core.getPlugin().getRunServer().getPlayerManager().getPlayer(loginData.getInGameUUID());
                     player.sendMessagePL(core.getLanguageHandler().getMessage("name_correct_info",
                             new Pair<>("old_name", loginName),
                             new Pair<>("new_name", finalFixName)
@@ -97,33 +85,10 @@ public class AssignInGameFlows extends BaseFlows<ValidateContext> {
             }
         }
 
-        // Username 需要更新
-        if (exist) {
-            try {
-                core.getSqlManager().getInGameProfileTable().updateUsername(inGameUUID,
-                        fixName);
-                validateContext.getInGameProfile().setId(inGameUUID);
-                validateContext.getInGameProfile().setName(fixName);
-                return Signal.PASSED;
-            } catch (SQLIntegrityConstraintViolationException e) {
-                validateContext.setDisallowMessage(core.getLanguageHandler().getMessage("auth_validate_failed_username_repeated",
-                        new Pair<>("name", validateContext.getInGameProfile().getName())
-                ));
-                return Signal.TERMINATED;
-            }
-        } else {
-            try {
-                core.getSqlManager().getInGameProfileTable().insertNewData(inGameUUID,
-                        fixName);
-                validateContext.getInGameProfile().setId(inGameUUID);
-                validateContext.getInGameProfile().setName(fixName);
-                return Signal.PASSED;
-            } catch (SQLIntegrityConstraintViolationException e) {
-                validateContext.setDisallowMessage(core.getLanguageHandler().getMessage("auth_validate_failed_username_repeated",
-                        new Pair<>("name", validateContext.getInGameProfile().getName())
-                ));
-                return Signal.TERMINATED;
-            }
-        }
+        // Username 需要更新，用户名冲突在写入时处理
+        loginData.setInGameUsername(fixName);
+        validateContext.getInGameProfile().setId(inGameUUID);
+        validateContext.getInGameProfile().setName(fixName);
+        return Signal.PASSED;
     }
 }
@@ -26,6 +26,7 @@ public final class Permissions {
     public static final String COMMAND_MULTI_LOGIN_PROFILE_SET_OTHER = "command.multilogin.profile.set.other";
     public static final String COMMAND_MULTI_LOGIN_PROFILE_REMOVE = "command.multilogin.profile.remove";
     public static final String COMMAND_MULTI_LOGIN_LIST = "command.multilogin.list";
+    public static final String COMMAND_MULTI_LOGIN_HEALTH = "command.multilogin.health";
     public static final String COMMAND_MULTI_LOGIN_FIND_ONLINE = "command.multilogin.find.online";
     public static final String COMMAND_MULTI_LOGIN_FIND_PROFILE = "command.multilogin.find.profile";
     public static final String COMMAND_MULTI_LOGIN_DATA_CONVERT = "command.multilogin.data.convert";
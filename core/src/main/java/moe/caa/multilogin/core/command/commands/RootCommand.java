@@ -4,6 +4,7 @@ import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
 import lombok.SneakyThrows;
 import moe.caa.multilogin.api.auth.GameProfile;
+import moe.caa.multilogin.api.auth.ServiceHealth;
 import moe.caa.multilogin.api.plugin.IPlayer;
 import moe.caa.multilogin.api.plugin.ISender;
 import moe.caa.multilogin.api.util.Pair;
@@ -11,6 +12,10 @@ import moe.caa.multilogin.core.command.CommandHandler;
 import moe.caa.multilogin.core.command.Permissions;
 import moe.caa.multilogin.core.command.argument.StringArgumentType;
 import moe.caa.multilogin.core.configuration.service.BaseServiceConfig;
+import moe.caa.multilogin.core.database.DataCache;
+import moe.caa.multilogin.core.database.pool.ISQLConnectionPool;
+import moe.caa.multilogin.core.database.table.SkinRestoredCacheTableV2;
+import moe.caa.multilogin.core.skinrestorer.SkinRestoreQueue;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -42,6 +47,9 @@ public class RootCommand {
                 .then(handler.literal("list")
                         .requires(sender -> sender.hasPermission(Permissions.COMMAND_MULTI_LOGIN_LIST))
                         .executes(this::executeList))
+                .then(handler.literal("health")
+                        .requires(sender -> sender.hasPermission(Permissions.COMMAND_MULTI_LOGIN_HEALTH))
+                        .executes(this::executeHealth))
                 .then(new MWhitelistCommand(handler).register(handler.literal("whitelist")))
                 .then(new MProfileCommand(handler).register(handler.literal("profile")))
                 .then(new MRenameCommand(handler).register(handler.literal("rename")))
@@ -112,6 +120,58 @@ public class RootCommand {
         return 0;
     }
 
+    // /MultiLogin health
+    private int executeHealth(CommandContext<ISender> context) {
+        List<ServiceHealth> healths = CommandHandler.getCore().getAuthHandler().getServiceHealths();
+        if (healths.isEmpty()) {
+            context.getSource().sendMessagePL(CommandHandler.getCore().getLanguageHandler().getMessage("command_message_health_empty"));
+            sendPoolHealth(context);
+            return 0;
+        }
+        String message = CommandHandler.getCore().getLanguageHandler().getMessage("command_message_health",
+                new Pair<>("list", healths.stream().map(health -> CommandHandler.getCore().getLanguageHandler().getMessage("command_message_health_entry",
+                        new Pair<>("service_name", health.getServiceName()),
+                        new Pair<>("service_id", health.getServiceId()),
+                        new Pair<>("state", CommandHandler.getCore().getLanguageHandler().getMessage(
+                                "command_message_health_state_" + health.getState().name().toLowerCase(Locale.ROOT))),
+                        new Pair<>("failure_rate", String.format("%.1f", health.getFailureRate() * 100)),
+                        new Pair<>("latency", health.getLatencyP95() < 0 ? "-" : String.valueOf(health.getLatencyP95()))
+                )).collect(Collectors.joining(CommandHandler.getCore().getLanguageHandler().getMessage("command_message_health_delimiter"))))
+        );
+        context.getSource().sendMessagePL(message);
+        sendPoolHealth(context);
+        return 0;
+    }
+
+    private void sendPoolHealth(CommandContext<ISender> context) {
+        for (Map.Entry<String, ISQLConnectionPool> entry : CommandHandler.getCore().getSqlManager().getPool().getMembers().entrySet()) {
+            ISQLConnectionPool pool = entry.getValue();
+            context.getSource().sendMessagePL(CommandHandler.getCore().getLanguageHandler().getMessage("command_message_health_pool",
+                    new Pair<>("name", entry.getKey()),
+                    new Pair<>("active", pool.getActiveConnections()),
+                    new Pair<>("idle", pool.getIdleConnections()),
+                    new Pair<>("total", pool.getTotalConnections()),
+                    new Pair<>("maximum", pool.getMaximumConnections()),
+                    new Pair<>("waiting", pool.getThreadsAwaitingConnection())
+            ));
+        }
+        SkinRestoredCacheTableV2 skinTable = CommandHandler.getCore().getSqlManager().getSkinRestoredCacheTable();
+        DataCache<?, Boolean> signatureCache = CommandHandler.getCore().getSkinRestorerHandler().getSignatureResultCache();
+        context.getSource().sendMessagePL(CommandHandler.getCore().getLanguageHandler().getMessage("command_message_health_skin_cache",
+                new Pair<>("restored_size", skinTable.getCache().size()),
+                new Pair<>("restored_hit_rate", String.format("%.1f", skinTable.getCache().getHitRate() * 100)),
+                new Pair<>("valid_size", signatureCache.size()),
+                new Pair<>("valid_hit_rate", String.format("%.1f", signatureCache.getHitRate() * 100)),
+                new Pair<>("evictions", skinTable.getCache().getEvictionCount() + signatureCache.getEvictionCount())
+        ));
+        SkinRestoreQueue skinQueue = CommandHandler.getCore().getSkinRestorerHandler().getQueue();
+        context.getSource().sendMessagePL(CommandHandler.getCore().getLanguageHandler().getMessage("command_message_health_skin_queue",
+                new Pair<>("running", skinQueue.getRunning()),
+                new Pair<>("queued", skinQueue.getQueued()),
+                new Pair<>("deduplicated", skinQueue.getDeduplicatedCount().sum()),
+                new Pair<>("dropped", skinQueue.getDroppedCount().sum())
+        ));
+    }
 
     private int executeEraseAllUsernames(CommandContext<ISender> context) {
         handler.getSecondaryConfirmationHandler().submit(context.getSource(), () -> {
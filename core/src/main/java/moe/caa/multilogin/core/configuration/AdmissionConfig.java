@@ -0,0 +1,29 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+
+/**
+ * 表示登录准入配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+@EqualsAndHashCode
+public class AdmissionConfig {
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final long queueTimeout;
+
+    public static AdmissionConfig read(CommentedConfigurationNode node) {
+        int maxConcurrency = node.node("maxConcurrency").getInt(64);
+        int maxQueued = node.node("maxQueued").getInt(512);
+        long queueTimeout = node.node("queueTimeout").getLong(10000);
+
+        return new AdmissionConfig(Math.max(1, maxConcurrency), Math.max(0, maxQueued), Math.max(0, queueTimeout));
+    }
+}
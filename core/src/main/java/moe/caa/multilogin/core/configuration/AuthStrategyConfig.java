@@ -0,0 +1,42 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+/**
+ * 表示 Yggdrasil 验证策略配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+public class AuthStrategyConfig {
+    private final AuthStrategy strategy;
+    private final long hedgeDelay;
+    private final long defaultHedgeDelay;
+    private final long retryDeadline;
+    private final int retryBudget;
+    private final CircuitBreakerConfig circuitBreaker;
+
+    public static AuthStrategyConfig read(CommentedConfigurationNode node) throws SerializationException {
+        AuthStrategy strategy = node.node("strategy").get(AuthStrategy.class, AuthStrategy.HEDGED);
+        long hedgeDelay = node.node("hedgeDelay").getLong(-1);
+        long defaultHedgeDelay = node.node("defaultHedgeDelay").getLong(500);
+        long retryDeadline = node.node("retryDeadline").getLong(20000);
+        int retryBudget = node.node("retryBudget").getInt(20);
+        CircuitBreakerConfig circuitBreaker = CircuitBreakerConfig.read(node.node("circuitBreaker"));
+
+        return new AuthStrategyConfig(strategy, hedgeDelay, Math.max(0, defaultHedgeDelay),
+                retryDeadline, Math.max(0, retryBudget), circuitBreaker);
+    }
+
+    public enum AuthStrategy {
+        // 先验证优先的验证服务器，全部失败后再验证其他验证服务器
+        PARALLEL,
+        // 先验证优先的验证服务器，超过对冲延迟或失败后再验证其他验证服务器
+        HEDGED
+    }
+}
@@ -0,0 +1,41 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+
+/**
+ * 表示验证服务器熔断器配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+public class CircuitBreakerConfig {
+    private final boolean enable;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDuration;
+    private final long slowCallThreshold;
+
+    public static CircuitBreakerConfig read(CommentedConfigurationNode node) {
+        boolean enable = node.node("enable").getBoolean(true);
+        int minimumCalls = node.node("minimumCalls").getInt(5);
+        int failureRateThreshold = node.node("failureRateThreshold").getInt(50);
+        long openDuration = node.node("openDuration").getLong(30000);
+        long slowCallThreshold = node.node("slowCallThreshold").getLong(5000);
+
+        return new CircuitBreakerConfig(enable, Math.max(1, minimumCalls),
+                Math.max(1, Math.min(100, failureRateThreshold)), Math.max(1000, openDuration), Math.max(0, slowCallThreshold));
+    }
+
+    /**
+     * 返回这次请求的耗时是否算作慢请求
+     *
+     * @param latency 请求耗时，单位毫秒
+     */
+    public boolean isSlowCall(long latency) {
+        return slowCallThreshold > 0 && latency >= slowCallThreshold;
+    }
+}
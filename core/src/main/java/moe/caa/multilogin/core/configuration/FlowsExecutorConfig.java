@@ -0,0 +1,53 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.flows.executor.FlowsExecutorFactory;
+import moe.caa.multilogin.flows.executor.FlowsExecutors;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+/**
+ * 表示工作流线程池配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+@EqualsAndHashCode
+public class FlowsExecutorConfig {
+    private final ExecutorType type;
+    private final int maxThreads;
+
+    public static FlowsExecutorConfig read(CommentedConfigurationNode node) throws SerializationException {
+        ExecutorType type = node.node("type").get(ExecutorType.class, ExecutorType.AUTO);
+        int maxThreads = node.node("maxThreads").getInt(64);
+
+        return new FlowsExecutorConfig(type, Math.max(1, maxThreads));
+    }
+
+    /**
+     * 创建对应的线程池工厂
+     */
+    public FlowsExecutorFactory createFactory() {
+        if (type == ExecutorType.VIRTUAL) {
+            if (FlowsExecutors.isVirtualThreadSupported()) return FlowsExecutors.virtual();
+            LoggerProvider.getLogger().warn("Virtual threads require Java 21 or later, falling back to platform threads.");
+            return FlowsExecutors.platform(maxThreads);
+        }
+        if (type == ExecutorType.PLATFORM) return FlowsExecutors.platform(maxThreads);
+        return FlowsExecutors.auto(maxThreads);
+    }
+
+    public enum ExecutorType {
+        // 支持时使用虚拟线程，否则使用平台线程
+        AUTO,
+        // 有线程数上限的平台线程
+        PLATFORM,
+        // 虚拟线程，需要 Java 21 及以上
+        VIRTUAL
+    }
+}
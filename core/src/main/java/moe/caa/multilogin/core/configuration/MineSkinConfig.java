@@ -0,0 +1,42 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 表示 MineSkin 皮肤修复接口配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString(exclude = "apiKeys")
+@EqualsAndHashCode
+public class MineSkinConfig {
+    private final String baseUrl;
+    private final List<String> apiKeys;
+    private final double requestsPerMinute;
+    private final int burst;
+    private final long maxWait;
+
+    public static MineSkinConfig read(CommentedConfigurationNode node) throws SerializationException {
+        String baseUrl = node.node("baseUrl").getString("https://api.mineskin.org");
+        List<String> apiKeys = node.node("apiKeys").getList(String.class, Collections.emptyList()).stream()
+                .filter(s -> s != null && !s.isBlank())
+                .map(String::trim)
+                .collect(Collectors.toUnmodifiableList());
+        double requestsPerMinute = node.node("requestsPerMinute").getDouble(10);
+        int burst = node.node("burst").getInt(2);
+        long maxWait = node.node("maxWait").getLong(30000);
+
+        while (baseUrl.endsWith("/")) baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        return new MineSkinConfig(baseUrl, apiKeys, Math.max(0.1, requestsPerMinute), Math.max(1, burst), Math.max(0, maxWait));
+    }
+}
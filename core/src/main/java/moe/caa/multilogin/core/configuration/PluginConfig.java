@@ -50,6 +50,16 @@ public class PluginConfig {
     @Getter
     private SqlConfig sqlConfig;
     @Getter
+    private AuthStrategyConfig authStrategyConfig;
+    @Getter
+    private FlowsExecutorConfig flowsExecutorConfig;
+    @Getter
+    private AdmissionConfig admissionConfig;
+    @Getter
+    private SkinRestorerQueueConfig skinRestorerQueueConfig;
+    @Getter
+    private MineSkinConfig mineSkinConfig;
+    @Getter
     private String nameAllowedRegular;
     private final MultiCore core;
     @Getter
@@ -96,6 +106,11 @@ public class PluginConfig {
         forceUseLogin = configConfigurationNode.node("forceUseLogin").getBoolean(true);
         checkUpdate = configConfigurationNode.node("checkUpdate").getBoolean(true);
         sqlConfig = SqlConfig.read(configConfigurationNode.node("sql"));
+        authStrategyConfig = AuthStrategyConfig.read(configConfigurationNode.node("authStrategy"));
+        flowsExecutorConfig = FlowsExecutorConfig.read(configConfigurationNode.node("flowsExecutor"));
+        admissionConfig = AdmissionConfig.read(configConfigurationNode.node("flowsExecutor", "admission"));
+        skinRestorerQueueConfig = SkinRestorerQueueConfig.read(configConfigurationNode.node("skinRestorerQueue"));
+        mineSkinConfig = MineSkinConfig.read(configConfigurationNode.node("mineSkin"));
         nameAllowedRegular = configConfigurationNode.node("nameAllowedRegular").getString("^[0-9a-zA-Z_]{3,16}$");
         floodgateSupport = configConfigurationNode.node("floodgateSupport").getBoolean(false);
         welcomeMsg = configConfigurationNode.node("welcomeMsg").getBoolean(true);
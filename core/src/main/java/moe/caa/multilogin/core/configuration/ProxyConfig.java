@@ -2,6 +2,7 @@ package moe.caa.multilogin.core.configuration;
 
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 import moe.caa.multilogin.api.util.ValueUtil;
@@ -19,6 +20,7 @@ import java.net.Proxy;
 @AllArgsConstructor(access = AccessLevel.PUBLIC)
 @Getter
 @ToString
+@EqualsAndHashCode
 public class ProxyConfig {
     private final Proxy.Type type;
     private final String hostname;
@@ -0,0 +1,32 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+/**
+ * 表示异步皮肤修复队列配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+public class SkinRestorerQueueConfig {
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final DropPolicy dropPolicy;
+
+    public static SkinRestorerQueueConfig read(CommentedConfigurationNode node) throws SerializationException {
+        int maxConcurrency = node.node("maxConcurrency").getInt(2);
+        int maxQueued = node.node("maxQueued").getInt(256);
+        DropPolicy dropPolicy = node.node("dropPolicy").get(DropPolicy.class, DropPolicy.NEWEST);
+
+        return new SkinRestorerQueueConfig(Math.max(1, maxConcurrency), Math.max(0, maxQueued), dropPolicy);
+    }
+
+    public enum DropPolicy {
+        NEWEST, OLDEST
+    }
+}
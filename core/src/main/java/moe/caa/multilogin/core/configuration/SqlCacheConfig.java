@@ -0,0 +1,32 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+
+/**
+ * 表示数据表缓存配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+public class SqlCacheConfig {
+    // 多个代理端可能共用 MySQL 数据库，其他代理端的修改不会使本地缓存失效，只能短时间缓存
+    private static final long MYSQL_EXPIRE_AFTER_WRITE = 5000;
+    private static final long H2_EXPIRE_AFTER_WRITE = 600000;
+
+    private final int maximumSize;
+    private final long expireAfterWrite;
+
+    public static SqlCacheConfig read(CommentedConfigurationNode node, SqlConfig.SqlBackend backend) {
+        int maximumSize = node.node("maximumSize").getInt(4096);
+        long expireAfterWrite = node.node("expireAfterWrite").getLong(-1);
+        if (expireAfterWrite < 0) {
+            expireAfterWrite = backend == SqlConfig.SqlBackend.MYSQL ? MYSQL_EXPIRE_AFTER_WRITE : H2_EXPIRE_AFTER_WRITE;
+        }
+
+        return new SqlCacheConfig(Math.max(0, maximumSize), expireAfterWrite);
+    }
+}
@@ -22,6 +22,9 @@ public class SqlConfig {
     private final String database;
     private final String tablePrefix;
     private final String connectUrl;
+    private final SqlPoolConfig pool;
+    private final SqlCacheConfig cache;
+    private final SqlReplicaConfig readReplica;
 
     public static SqlConfig read(CommentedConfigurationNode node) throws SerializationException {
         SqlBackend backend = node.node("backend").get(SqlBackend.class, SqlBackend.H2);
@@ -32,8 +35,11 @@ public class SqlConfig {
         String database = node.node("database").getString("multilogin");
         String tablePrefix = node.node("tablePrefix").getString("multilogin");
         String connectUrl = node.node("connectUrl").getString("");
+        SqlPoolConfig pool = SqlPoolConfig.read(node.node("pool"));
+        SqlCacheConfig cache = SqlCacheConfig.read(node.node("cache"), backend);
+        SqlReplicaConfig readReplica = SqlReplicaConfig.read(node.node("readReplica"));
 
-        return new SqlConfig(backend, ip, port, username, password, database, tablePrefix, connectUrl);
+        return new SqlConfig(backend, ip, port, username, password, database, tablePrefix, connectUrl, pool, cache, readReplica);
     }
 
     public enum SqlBackend {
@@ -0,0 +1,36 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+
+/**
+ * 表示数据库连接池配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+public class SqlPoolConfig {
+    private final int maximumPoolSize;
+    private final int minimumIdle;
+    private final long connectionTimeout;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long leakDetectionThreshold;
+
+    public static SqlPoolConfig read(CommentedConfigurationNode node) {
+        int maximumPoolSize = node.node("maximumPoolSize").getInt(20);
+        int minimumIdle = node.node("minimumIdle").getInt(-1);
+        long connectionTimeout = node.node("connectionTimeout").getLong(30000);
+        long idleTimeout = node.node("idleTimeout").getLong(600000);
+        long maxLifetime = node.node("maxLifetime").getLong(1800000);
+        long leakDetectionThreshold = node.node("leakDetectionThreshold").getLong(0);
+
+        // HikariCP 要求连接超时不小于 250 毫秒，泄漏检测阈值为 0 或不小于 2000 毫秒
+        return new SqlPoolConfig(Math.max(1, maximumPoolSize), minimumIdle, Math.max(250, connectionTimeout),
+                Math.max(0, idleTimeout), Math.max(0, maxLifetime),
+                leakDetectionThreshold <= 0 ? 0 : Math.max(2000, leakDetectionThreshold));
+    }
+}
@@ -0,0 +1,31 @@
+package moe.caa.multilogin.core.configuration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+
+/**
+ * 表示 MySQL 只读副本配置
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+@ToString
+public class SqlReplicaConfig {
+    private final boolean enable;
+    private final String ip;
+    private final int port;
+    private final String connectUrl;
+    private final long stickyWindow;
+
+    public static SqlReplicaConfig read(CommentedConfigurationNode node) {
+        boolean enable = node.node("enable").getBoolean(false);
+        String ip = node.node("ip").getString("");
+        int port = node.node("port").getInt(3306);
+        String connectUrl = node.node("connectUrl").getString("");
+        long stickyWindow = node.node("stickyWindow").getLong(2000);
+
+        return new SqlReplicaConfig(enable, ip, port, connectUrl, Math.max(0, stickyWindow));
+    }
+}
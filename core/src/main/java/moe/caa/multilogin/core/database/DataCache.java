@@ -0,0 +1,153 @@
+package moe.caa.multilogin.core.database;
+
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 数据表缓存
+ * <p>
+ * 有容量上限的 LRU 缓存，条目在写入一段时间后过期。
+ * 数据表修改数据时移除对应的条目，失效代数用于丢弃失效前从数据库读出、失效后才放入的旧数据。
+ */
+public class DataCache<K, V> {
+    @Getter
+    private final int maximumSize;
+    private final long expireAfterWrite;
+    private final LinkedHashMap<K, Entry<V>> map;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    // 每次失效时递增
+    private long generation = 0;
+
+    /**
+     * 构建缓存
+     *
+     * @param maximumSize      最大条目数，为 0 时不缓存
+     * @param expireAfterWrite 写入后的过期时间，单位毫秒，为 0 时不过期
+     */
+    public DataCache(int maximumSize, long expireAfterWrite) {
+        this.maximumSize = maximumSize;
+        this.expireAfterWrite = expireAfterWrite;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= DataCache.this.maximumSize) return false;
+                evictionCount.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 获得缓存的值
+     *
+     * @param key 键
+     * @return 缓存的值，不存在或已过期时返回 null
+     */
+    public synchronized V getIfPresent(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            map.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return entry.value;
+    }
+
+    /**
+     * 获得当前的失效代数，需要在读数据库之前获得
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * 放入从数据库读出的值
+     *
+     * @param key        键
+     * @param value      值
+     * @param generation 读数据库之前获得的失效代数，期间发生过失效时不放入
+     */
+    public synchronized void put(K key, V value, long generation) {
+        if (maximumSize <= 0 || value == null) return;
+        if (generation != this.generation) return;
+        long expireAt = expireAfterWrite <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + expireAfterWrite;
+        map.put(key, new Entry<>(value, expireAt));
+    }
+
+    /**
+     * 移除一个条目
+     */
+    public synchronized void invalidate(K key) {
+        generation++;
+        map.remove(key);
+    }
+
+    /**
+     * 移除所有值满足条件的条目
+     */
+    public synchronized void invalidateIf(Predicate<V> predicate) {
+        generation++;
+        Iterator<Entry<V>> iterator = map.values().iterator();
+        while (iterator.hasNext()) {
+            if (predicate.test(iterator.next().value)) iterator.remove();
+        }
+    }
+
+    /**
+     * 移除所有条目
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 获得命中率
+     */
+    public double getHitRate() {
+        long hit = getHitCount();
+        long total = hit + getMissCount();
+        return total == 0 ? 1 : (double) hit / total;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+}
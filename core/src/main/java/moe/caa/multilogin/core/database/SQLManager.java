@@ -1,12 +1,18 @@
 package moe.caa.multilogin.core.database;
 
 import lombok.Getter;
+import moe.caa.multilogin.api.logger.LoggerProvider;
 import moe.caa.multilogin.api.util.ValueUtil;
+import moe.caa.multilogin.core.configuration.SqlCacheConfig;
 import moe.caa.multilogin.core.configuration.SqlConfig;
+import moe.caa.multilogin.core.configuration.SqlReplicaConfig;
 import moe.caa.multilogin.core.database.pool.H2ConnectionPool;
 import moe.caa.multilogin.core.database.pool.ISQLConnectionPool;
 import moe.caa.multilogin.core.database.pool.MysqlConnectionPool;
+import moe.caa.multilogin.core.database.pool.ReplicaRoutingConnectionPool;
 import moe.caa.multilogin.core.database.table.InGameProfileTableV3;
+import moe.caa.multilogin.core.database.table.LoginDataAccess;
+import moe.caa.multilogin.core.database.table.MigrationTable;
 import moe.caa.multilogin.core.database.table.SkinRestoredCacheTableV2;
 import moe.caa.multilogin.core.database.table.UserDataTableV3;
 import moe.caa.multilogin.core.main.MultiCore;
@@ -28,10 +34,17 @@ public class SQLManager {
     private UserDataTableV3 userDataTable;
     @Getter
     private SkinRestoredCacheTableV2 skinRestoredCacheTable;
+    @Getter
+    private LoginDataAccess loginDataAccess;
+    @Getter
+    private MigrationTable migrationTable;
+    @Getter
+    private final WriteQueue writeQueue;
 
 
     public SQLManager(MultiCore core) {
         this.core = core;
+        this.writeQueue = new WriteQueue(this);
     }
 
     public void init() throws SQLException, ClassNotFoundException {
@@ -39,12 +52,26 @@ public class SQLManager {
         if (sqlConfig.getBackend() == SqlConfig.SqlBackend.MYSQL) {
             pool = new MysqlConnectionPool(sqlConfig.getIp(), sqlConfig.getPort(), sqlConfig.getDatabase(),
                     sqlConfig.getUsername(), sqlConfig.getPassword(),
-                    ValueUtil.isEmpty(sqlConfig.getConnectUrl()) ? MysqlConnectionPool.defaultUrl : sqlConfig.getConnectUrl()
+                    ValueUtil.isEmpty(sqlConfig.getConnectUrl()) ? MysqlConnectionPool.defaultUrl : sqlConfig.getConnectUrl(),
+                    sqlConfig.getPool()
             );
+            SqlReplicaConfig replicaConfig = sqlConfig.getReadReplica();
+            if (replicaConfig.isEnable()) {
+                ISQLConnectionPool replica = new MysqlConnectionPool(replicaConfig.getIp(), replicaConfig.getPort(), sqlConfig.getDatabase(),
+                        sqlConfig.getUsername(), sqlConfig.getPassword(),
+                        ValueUtil.isEmpty(replicaConfig.getConnectUrl()) ? MysqlConnectionPool.defaultUrl : replicaConfig.getConnectUrl(),
+                        sqlConfig.getPool()
+                );
+                pool = new ReplicaRoutingConnectionPool(pool, replica, replicaConfig.getStickyWindow());
+            }
         } else if (sqlConfig.getBackend() == SqlConfig.SqlBackend.H2) {
             pool = new H2ConnectionPool(core.getPlugin().getDataFolder(), sqlConfig.getUsername(), sqlConfig.getPassword(),
-                    ValueUtil.isEmpty(sqlConfig.getConnectUrl()) ? H2ConnectionPool.defaultUrl : sqlConfig.getConnectUrl()
+                    ValueUtil.isEmpty(sqlConfig.getConnectUrl()) ? H2ConnectionPool.defaultUrl : sqlConfig.getConnectUrl(),
+                    sqlConfig.getPool()
             );
+            if (sqlConfig.getReadReplica().isEnable()) {
+                LoggerProvider.getLogger().warn("The read replica is only supported by the MySQL backend, ignored.");
+            }
         } else {
             throw new UnsupportedOperationException("Database type Unknown.");
         }
@@ -55,20 +82,48 @@ public class SQLManager {
         final String userDataTableNameV2 = tablePrefix + "user_data_v2";
         final String userDataTableNameV3 = tablePrefix + "user_data_v3";
         final String skinRestorerCacheTableNameV2 = tablePrefix + "skin_restored_cache_v2";
-        userDataTable = new UserDataTableV3(this, userDataTableNameV3, userDataTableNameV2);
-        skinRestoredCacheTable = new SkinRestoredCacheTableV2(this, skinRestorerCacheTableNameV2);
-        inGameProfileTable = new InGameProfileTableV3(this, inGameProfileTableNameV3, inGameProfileTableNameV2);
+        final String migrationTableName = tablePrefix + "migration";
+        migrationTable = new MigrationTable(this, migrationTableName);
+        SqlCacheConfig cacheConfig = sqlConfig.getCache();
+        userDataTable = new UserDataTableV3(this, userDataTableNameV3, userDataTableNameV2,
+                new DataCache<>(cacheConfig.getMaximumSize(), cacheConfig.getExpireAfterWrite()));
+        skinRestoredCacheTable = new SkinRestoredCacheTableV2(this, skinRestorerCacheTableNameV2,
+                new DataCache<>(cacheConfig.getMaximumSize(), cacheConfig.getExpireAfterWrite()));
+        inGameProfileTable = new InGameProfileTableV3(this, inGameProfileTableNameV3, inGameProfileTableNameV2,
+                new DataCache<>(cacheConfig.getMaximumSize(), cacheConfig.getExpireAfterWrite()));
+        loginDataAccess = new LoginDataAccess(this, userDataTableNameV3, inGameProfileTableNameV3);
 
         try (Connection connection = getPool().getConnection()){
             connection.setAutoCommit(false);
+            migrationTable.init(connection);
             userDataTable.init(connection);
+            userDataTable.upgradeOnlineNameLowerCase(connection);
             inGameProfileTable.init(connection);
             skinRestoredCacheTable.init(connection);
             connection.commit();
         }
+
+        writeQueue.start(core.getPlugin().getRunServer().getScheduler());
+
+        // 老数据的小写在线名称在后台回填，期间按在线名称的查询仍可用
+        core.getPlugin().getRunServer().getScheduler().runTaskAsync(() -> {
+            try {
+                userDataTable.backfillOnlineNameLowerCase();
+            } catch (SQLException e) {
+                LoggerProvider.getLogger().error("An exception occurred while filling lower case online name of user data.", e);
+            }
+        });
     }
 
     public void close() {
+        if (userDataTable != null) logCacheStats("user data", userDataTable.getCache());
+        if (inGameProfileTable != null) logCacheStats("in game profile", inGameProfileTable.getCache());
+        if (skinRestoredCacheTable != null) logCacheStats("restored skin", skinRestoredCacheTable.getCache());
         if (pool != null) pool.close();
     }
+
+    private void logCacheStats(String name, DataCache<?, ?> cache) {
+        LoggerProvider.getLogger().debug(String.format("The %s cache: %d hits, %d misses, %d evictions, hit rate %.2f%%.",
+                name, cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount(), cache.getHitRate() * 100));
+    }
 }
@@ -0,0 +1,153 @@
+package moe.caa.multilogin.core.database;
+
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.plugin.BaseScheduler;
+import moe.caa.multilogin.api.util.Pair;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 数据库写入队列
+ * <p>
+ * 不影响登录结果的写入先在内存中按键合并，由后台线程定期以批处理写入，登录线程无需等待。
+ * 写入失败的数据保留在队列中等待下次写入，关闭时写入剩余的全部数据。
+ */
+public class WriteQueue {
+    // 定期写入的周期，单位毫秒
+    private static final long FLUSH_PERIOD = 1000;
+    // 积压的数据超过这个数量时立即写入
+    private static final int FLUSH_THRESHOLD = 500;
+
+    private final SQLManager sqlManager;
+    // 在线 UUID 和验证服务器 ID \ 在线名称
+    private final Map<Pair<UUID, Integer>, String> pendingOnlineNames = new ConcurrentHashMap<>();
+    // 皮肤 URL 的 SHA256 和皮肤模型 \ 修复后的值和签名
+    private final Map<Pair<ByteBuffer, String>, Pair<String, String>> pendingSkinRestored = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private BaseScheduler scheduler;
+    private volatile boolean closed;
+
+    public WriteQueue(SQLManager sqlManager) {
+        this.sqlManager = sqlManager;
+    }
+
+    /**
+     * 开始定期写入
+     *
+     * @param scheduler 执行写入的调度器
+     */
+    public void start(BaseScheduler scheduler) {
+        this.scheduler = scheduler;
+        scheduler.runTaskAsyncTimer(this::flushQuietly, FLUSH_PERIOD, FLUSH_PERIOD);
+    }
+
+    /**
+     * 更新在线名称，同一玩家的多次更新只写入最后一次
+     *
+     * @param onlineUUID 在线 UUID
+     * @param serviceId  验证服务器 ID
+     * @param onlineName 在线名称
+     */
+    public void setOnlineName(UUID onlineUUID, int serviceId, String onlineName) {
+        pendingOnlineNames.put(new Pair<>(onlineUUID, serviceId), onlineName);
+        afterEnqueue();
+    }
+
+    /**
+     * 插入皮肤修复缓存
+     *
+     * @param urlSha256 皮肤 URL 的 SHA256
+     * @param model     皮肤模型
+     * @param value     值
+     * @param signature 签名
+     */
+    public void insertSkinRestored(byte[] urlSha256, String model, String value, String signature) {
+        pendingSkinRestored.put(new Pair<>(ByteBuffer.wrap(urlSha256), model), new Pair<>(value, signature));
+        afterEnqueue();
+    }
+
+    /**
+     * 获得还没有写入的皮肤修复缓存
+     *
+     * @param urlSha256 皮肤 URL 的 SHA256
+     * @param model     皮肤模型
+     * @return 值和签名，不存在时返回 null
+     */
+    public Pair<String, String> getPendingSkinRestored(byte[] urlSha256, String model) {
+        return pendingSkinRestored.get(new Pair<>(ByteBuffer.wrap(urlSha256), model));
+    }
+
+    /**
+     * 获得还没有写入的在线名称
+     *
+     * @param onlineUUID 在线 UUID
+     * @param serviceId  验证服务器 ID
+     * @return 在线名称，不存在时返回 null
+     */
+    public String getPendingOnlineName(UUID onlineUUID, int serviceId) {
+        return pendingOnlineNames.get(new Pair<>(onlineUUID, serviceId));
+    }
+
+    /**
+     * 获得还没有写入的数据数量
+     */
+    public int size() {
+        return pendingOnlineNames.size() + pendingSkinRestored.size();
+    }
+
+    private void afterEnqueue() {
+        if (closed || scheduler == null) {
+            flushQuietly();
+            return;
+        }
+        if (size() >= FLUSH_THRESHOLD && flushScheduled.compareAndSet(false, true)) {
+            scheduler.runTaskAsync(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * 写入队列中的全部数据
+     * 写入期间被再次修改的数据会留在队列中，由下次写入处理
+     */
+    public synchronized void flush() throws SQLException {
+        if (!pendingOnlineNames.isEmpty()) {
+            Map<Pair<UUID, Integer>, String> snapshot = new HashMap<>(pendingOnlineNames);
+            sqlManager.getUserDataTable().setOnlineNames(snapshot);
+            snapshot.forEach(pendingOnlineNames::remove);
+        }
+        if (!pendingSkinRestored.isEmpty()) {
+            Map<Pair<ByteBuffer, String>, Pair<String, String>> snapshot = new HashMap<>(pendingSkinRestored);
+            sqlManager.getSkinRestoredCacheTable().insertNew(snapshot);
+            snapshot.forEach(pendingSkinRestored::remove);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LoggerProvider.getLogger().error("An exception occurred while flushing the database write queue.", e);
+        }
+    }
+
+    /**
+     * 关闭写入队列，写入剩余的全部数据
+     */
+    public void close() {
+        closed = true;
+        try {
+            flush();
+        } catch (SQLException e) {
+            LoggerProvider.getLogger().error(String.format("Unable to write %d pending data of the database write queue.", size()), e);
+        }
+    }
+}
@@ -1,39 +1,37 @@
 package moe.caa.multilogin.core.database.pool;
 
-import org.h2.jdbcx.JdbcConnectionPool;
+import com.zaxxer.hikari.HikariConfig;
+import moe.caa.multilogin.core.configuration.SqlPoolConfig;
 
 import java.io.File;
-import java.sql.Connection;
-import java.sql.SQLException;
 
 /**
  * H2 数据库链接池
  */
-public class H2ConnectionPool implements ISQLConnectionPool {
-    public static final String defaultUrl = "jdbc:h2:{0};TRACE_LEVEL_FILE=0;TRACE_LEVEL_SYSTEM_OUT=0";
-    private final JdbcConnectionPool cp;
+public class H2ConnectionPool extends HikariConnectionPool {
+    // QUERY_CACHE_SIZE 为每个会话缓存解析后的语句，池化的连接复用会话，默认的 8 条放不下所有表的语句
+    public static final String defaultUrl = "jdbc:h2:{0};TRACE_LEVEL_FILE=0;TRACE_LEVEL_SYSTEM_OUT=0;QUERY_CACHE_SIZE=64";
 
-    public H2ConnectionPool(File dataFolder, String user, String password) throws ClassNotFoundException {
-        this(dataFolder, user, password, defaultUrl);
+    public H2ConnectionPool(File dataFolder, String user, String password, SqlPoolConfig poolConfig) throws ClassNotFoundException {
+        this(dataFolder, user, password, defaultUrl, poolConfig);
     }
 
-    public H2ConnectionPool(File dataFolder, String user, String password, String url) throws ClassNotFoundException {
-        Class.forName("org.h2.Driver");
-        cp = JdbcConnectionPool.create(url.replace("{0}", dataFolder.getAbsolutePath() + File.separator + "multilogin"), user, password);
+    public H2ConnectionPool(File dataFolder, String user, String password, String url, SqlPoolConfig poolConfig) throws ClassNotFoundException {
+        super(createConfig(dataFolder, user, password, url), poolConfig);
     }
 
-    @Override
-    public Connection getConnection() throws SQLException {
-        return cp.getConnection();
+    private static HikariConfig createConfig(File dataFolder, String user, String password, String url) throws ClassNotFoundException {
+        Class.forName("org.h2.Driver");
+        HikariConfig config = new HikariConfig();
+        config.setDriverClassName("org.h2.Driver");
+        config.setJdbcUrl(url.replace("{0}", dataFolder.getAbsolutePath() + File.separator + "multilogin"));
+        config.setUsername(user);
+        config.setPassword(password);
+        return config;
     }
 
     @Override
     public String name() {
         return "H2";
     }
-
-    @Override
-    public void close() {
-        cp.dispose();
-    }
 }
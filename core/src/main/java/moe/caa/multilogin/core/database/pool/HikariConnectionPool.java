@@ -0,0 +1,68 @@
+package moe.caa.multilogin.core.database.pool;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import moe.caa.multilogin.core.configuration.SqlPoolConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 基于 HikariCP 的数据库链接池
+ */
+public abstract class HikariConnectionPool implements ISQLConnectionPool {
+    private final HikariDataSource dataSource;
+
+    protected HikariConnectionPool(HikariConfig config, SqlPoolConfig poolConfig) {
+        config.setPoolName("MultiLogin-" + name());
+        config.setMaximumPoolSize(poolConfig.getMaximumPoolSize());
+        if (poolConfig.getMinimumIdle() >= 0) {
+            config.setMinimumIdle(Math.min(poolConfig.getMinimumIdle(), poolConfig.getMaximumPoolSize()));
+        }
+        config.setConnectionTimeout(poolConfig.getConnectionTimeout());
+        config.setIdleTimeout(poolConfig.getIdleTimeout());
+        config.setMaxLifetime(poolConfig.getMaxLifetime());
+        config.setLeakDetectionThreshold(poolConfig.getLeakDetectionThreshold());
+        dataSource = new HikariDataSource(config);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+        return bean == null ? 0 : bean.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+        return bean == null ? 0 : bean.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+        return bean == null ? 0 : bean.getTotalConnections();
+    }
+
+    @Override
+    public int getMaximumConnections() {
+        return dataSource.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection() {
+        HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+        return bean == null ? 0 : bean.getThreadsAwaitingConnection();
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
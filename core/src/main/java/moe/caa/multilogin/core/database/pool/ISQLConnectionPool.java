@@ -2,6 +2,8 @@ package moe.caa.multilogin.core.database.pool;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * 表示数据库连接池
@@ -14,11 +16,79 @@ public interface ISQLConnectionPool {
      */
     Connection getConnection() throws SQLException;
 
+    /**
+     * 获得用于读取某个键对应数据的链接对象，存在只读副本时可能来自副本
+     *
+     * @param key 读取的数据的键
+     * @return 链接对象
+     */
+    default Connection getReadConnection(Object key) throws SQLException {
+        return getConnection();
+    }
+
+    /**
+     * 标记某个键对应的数据刚刚被写入，之后一段时间内读取它时使用主库
+     *
+     * @param key 写入的数据的键，为 null 时表示影响范围无法确定的写入
+     */
+    default void markWritten(Object key) {
+    }
+
+    /**
+     * 某个键对应的数据是否刚刚被写入，副本可能还没有同步
+     *
+     * @param key 数据的键
+     */
+    default boolean isRecentlyWritten(Object key) {
+        return false;
+    }
+
     /**
      * 获得该连接池名字
      */
     String name();
 
+    /**
+     * 获得实际持有连接的各个连接池，用于分别查看它们的状态
+     *
+     * @return 名字 \ 连接池
+     */
+    default Map<String, ISQLConnectionPool> getMembers() {
+        return Collections.singletonMap(name(), this);
+    }
+
+    /**
+     * 获得流式读取大量数据时使用的 fetch size
+     */
+    default int getStreamingFetchSize() {
+        return 1000;
+    }
+
+    /**
+     * 获得正在使用的连接数
+     */
+    int getActiveConnections();
+
+    /**
+     * 获得空闲的连接数
+     */
+    int getIdleConnections();
+
+    /**
+     * 获得当前的连接总数
+     */
+    int getTotalConnections();
+
+    /**
+     * 获得最大连接数
+     */
+    int getMaximumConnections();
+
+    /**
+     * 获得正在等待连接的线程数，持续大于 0 表示连接池不够用
+     */
+    int getThreadsAwaitingConnection();
+
     /**
      * 关闭链接
      */
@@ -1,45 +1,47 @@
 package moe.caa.multilogin.core.database.pool;
 
 import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-
-import java.sql.Connection;
-import java.sql.SQLException;
+import moe.caa.multilogin.core.configuration.SqlPoolConfig;
 
 /**
  * MySQL 链接池
  */
-public class MysqlConnectionPool implements ISQLConnectionPool {
+public class MysqlConnectionPool extends HikariConnectionPool {
     public static final String defaultUrl = "jdbc:mysql://{0}:{1}/{2}?autoReconnect=true&useUnicode=true&amp&characterEncoding=UTF-8&useSSL=false";
-    private final HikariDataSource dataSource;
 
-    public MysqlConnectionPool(String ip, int port, String database, String username, String password, String url) throws ClassNotFoundException {
+    public MysqlConnectionPool(String ip, int port, String database, String username, String password, String url, SqlPoolConfig poolConfig) throws ClassNotFoundException {
+        super(createConfig(ip, port, database, username, password, url), poolConfig);
+    }
+
+    public MysqlConnectionPool(String ip, int port, String database, String username, String password, SqlPoolConfig poolConfig) throws ClassNotFoundException {
+        this(ip, port, database, username, password, defaultUrl, poolConfig);
+    }
+
+    private static HikariConfig createConfig(String ip, int port, String database, String username, String password, String url) throws ClassNotFoundException {
         Class.forName("com.mysql.cj.jdbc.Driver");
         url = url.replace("{0}", ip).replace("{1}", String.valueOf(port)).replace("{2}", database);
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl(url);
         config.setUsername(username);
         config.setPassword(password);
-        config.setMaximumPoolSize(20);
-        dataSource = new HikariDataSource(config);
-    }
-
-    public MysqlConnectionPool(String ip, int port, String database, String username, String password) throws ClassNotFoundException {
-        this(ip, port, database, username, password, defaultUrl);
+        // 缓存预处理语句，并使用服务端预处理，避免每次查询都重新解析 SQL
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        return config;
     }
 
+    /**
+     * MySQL 驱动只有 fetch size 为 Integer.MIN_VALUE 时才逐行读取结果，否则会把全部结果读入内存
+     */
     @Override
-    public Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+    public int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
     }
 
     @Override
     public String name() {
         return "MySQL";
     }
-
-    @Override
-    public void close() {
-        dataSource.close();
-    }
 }
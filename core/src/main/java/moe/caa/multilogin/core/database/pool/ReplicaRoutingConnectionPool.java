@@ -0,0 +1,118 @@
+package moe.caa.multilogin.core.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读写分离的数据库链接池
+ * <p>
+ * 写入和普通的读取使用主库，按键的读取使用只读副本。
+ * 某个键的数据写入后的一段时间内，读取它时仍然使用主库，避免副本同步延迟导致读到旧数据。
+ * 连接数等统计为主库和副本之和，可以通过 {@link #getMembers()} 分别查看。
+ */
+public class ReplicaRoutingConnectionPool implements ISQLConnectionPool {
+    // 超过这个数量时清理过期的写入记录
+    private static final int CLEANUP_THRESHOLD = 10000;
+
+    private final ISQLConnectionPool primary;
+    private final ISQLConnectionPool replica;
+    private final long stickyWindow;
+
+    // 键 \ 最后写入的时间
+    private final Map<Object, Long> writtenMap = new ConcurrentHashMap<>();
+    private volatile long lastGlobalWritten;
+
+    public ReplicaRoutingConnectionPool(ISQLConnectionPool primary, ISQLConnectionPool replica, long stickyWindow) {
+        this.primary = primary;
+        this.replica = replica;
+        this.stickyWindow = stickyWindow;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getReadConnection(Object key) throws SQLException {
+        if (isRecentlyWritten(key)) return primary.getConnection();
+        return replica.getConnection();
+    }
+
+    @Override
+    public void markWritten(Object key) {
+        long now = System.currentTimeMillis();
+        if (key == null) {
+            lastGlobalWritten = now;
+            return;
+        }
+        writtenMap.put(key, now);
+        if (writtenMap.size() > CLEANUP_THRESHOLD) {
+            writtenMap.values().removeIf(time -> now - time > stickyWindow);
+        }
+    }
+
+    @Override
+    public boolean isRecentlyWritten(Object key) {
+        long now = System.currentTimeMillis();
+        if (now - lastGlobalWritten <= stickyWindow) return true;
+        if (key == null) return false;
+        Long time = writtenMap.get(key);
+        return time != null && now - time <= stickyWindow;
+    }
+
+    @Override
+    public Map<String, ISQLConnectionPool> getMembers() {
+        Map<String, ISQLConnectionPool> members = new LinkedHashMap<>();
+        members.put(primary.name() + " primary", primary);
+        members.put(replica.name() + " replica", replica);
+        return members;
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return primary.getStreamingFetchSize();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return primary.getActiveConnections() + replica.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return primary.getIdleConnections() + replica.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return primary.getTotalConnections() + replica.getTotalConnections();
+    }
+
+    @Override
+    public int getMaximumConnections() {
+        return primary.getMaximumConnections() + replica.getMaximumConnections();
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection() {
+        return primary.getThreadsAwaitingConnection() + replica.getThreadsAwaitingConnection();
+    }
+
+    @Override
+    public String name() {
+        return primary.name() + " (with read replica)";
+    }
+
+    @Override
+    public void close() {
+        try {
+            replica.close();
+        } finally {
+            primary.close();
+        }
+    }
+}
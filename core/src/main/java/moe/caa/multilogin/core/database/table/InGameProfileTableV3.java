@@ -1,8 +1,9 @@
 package moe.caa.multilogin.core.database.table;
 
-import moe.caa.multilogin.api.logger.LoggerProvider;
+import lombok.Getter;
 import moe.caa.multilogin.api.util.Pair;
 import moe.caa.multilogin.api.util.ValueUtil;
+import moe.caa.multilogin.core.database.DataCache;
 import moe.caa.multilogin.core.database.SQLManager;
 
 import java.sql.Connection;
@@ -13,17 +14,63 @@ import java.text.MessageFormat;
 import java.util.*;
 
 public class InGameProfileTableV3 {
-    private static final String fieldInGameUuid = "in_game_uuid";
-    private static final String fieldCurrentUsernameLowerCase = "current_username_lower_case";
-    private static final String fieldCurrentUsernameOriginal = "current_username_original";
+    static final String fieldInGameUuid = "in_game_uuid";
+    static final String fieldCurrentUsernameLowerCase = "current_username_lower_case";
+    static final String fieldCurrentUsernameOriginal = "current_username_original";
     private final String tableName;
     private final String tableNameV2;
     private final SQLManager sqlManager;
+    // 游戏内 UUID \ 游戏内 UUID 和用户名
+    @Getter
+    private final DataCache<UUID, Pair<UUID, String>> cache;
 
-    public InGameProfileTableV3(SQLManager sqlManager, String tableName, String tableNameV2) {
+    private final String sqlGet;
+    private final String sqlGetInGameUUIDIgnoreCase;
+    private final String sqlGetUsernamesWithPrefix;
+    private final String sqlUpdateUsername;
+    private final String sqlInsertNewData;
+    private final String sqlRemove;
+    private final String sqlEraseUsername;
+    private final String sqlEraseAllUsername;
+
+    public InGameProfileTableV3(SQLManager sqlManager, String tableName, String tableNameV2,
+                                DataCache<UUID, Pair<UUID, String>> cache) {
         this.tableName = tableName;
         this.sqlManager = sqlManager;
         this.tableNameV2 = tableNameV2;
+        this.cache = cache;
+        this.sqlGet = String.format(
+                "SELECT %s FROM %s WHERE %s = ? LIMIT 1"
+                , fieldCurrentUsernameOriginal, tableName, fieldInGameUuid
+        );
+        this.sqlGetInGameUUIDIgnoreCase = String.format(
+                "SELECT %s FROM %s WHERE %s = ? LIMIT 1"
+                , fieldInGameUuid, tableName, fieldCurrentUsernameLowerCase
+        );
+        this.sqlGetUsernamesWithPrefix = String.format(
+                "SELECT %s, %s FROM %s WHERE %s LIKE ? ESCAPE '!' AND CHAR_LENGTH(%s) <= ?"
+                , fieldCurrentUsernameLowerCase, fieldInGameUuid, tableName, fieldCurrentUsernameLowerCase, fieldCurrentUsernameLowerCase
+        );
+        this.sqlUpdateUsername = String.format(
+                "UPDATE %s SET %s = ?, %s = ? WHERE %s = ?"
+                , tableName, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal, fieldInGameUuid
+        );
+        this.sqlInsertNewData = String.format(
+                "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)"
+                , tableName, fieldInGameUuid, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal
+        );
+        this.sqlRemove = String.format(
+                "DELETE FROM %s WHERE %s = ?"
+                , tableName, fieldInGameUuid
+        );
+        this.sqlEraseUsername = String.format(
+                "UPDATE %s SET %s = ?, %s = ? WHERE %s = ?"
+                , tableName, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal, fieldCurrentUsernameLowerCase
+        );
+        this.sqlEraseAllUsername = String.format(
+                "UPDATE %s SET %s = ?, %s = ?"
+                , tableName, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal
+        );
     }
 
 
@@ -38,62 +85,37 @@ public class InGameProfileTableV3 {
                 , tableName, fieldInGameUuid, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal);
         try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.executeUpdate();
-            // 查新表有没有数据，没有的话就尝试一下数据升级
-            try (
-                    PreparedStatement prepareStatement = connection.prepareStatement("SELECT COUNT(0) FROM " + tableName);
-                    ResultSet resultSet = prepareStatement.executeQuery();
-            ) {
-                resultSet.next();
-                if (resultSet.getInt(1) != 0) {
-                    // 新表里面有数据，不需要升级
-                    return;
-                }
-            }
-            try (
-                    PreparedStatement statement = connection.prepareStatement("SELECT COUNT(0) FROM " + tableNameV2);
-                    ResultSet resultSet = statement.executeQuery()
-            ) {
-                resultSet.next();
-                if (resultSet.getInt(1) == 0) {
-                    // 老表里面没有数据，不需要升级
-                    return;
-                }
-            } catch (Exception ignored) {
-                // 老表不存在，不需要进行升级
-                return;
-            }
         }
-
-        LoggerProvider.getLogger().info("Updating in game profile data...");
-        // 读老表
-        List<Pair<byte[], String>> oldData = new ArrayList<>();
-        try (PreparedStatement statement = connection.prepareStatement("SELECT in_game_uuid, current_username FROM " + tableNameV2);
-             ResultSet resultSet = statement.executeQuery();) {
-            while (resultSet.next()) {
-                oldData.add(new Pair<>(resultSet.getBytes(1), resultSet.getString(2)));
-            }
-        }
-        for (Pair<byte[], String> datum : oldData) {
-            try (PreparedStatement statement = connection.prepareStatement(
-                    String.format(
-                            "INSERT INTO %s (%s, %s) VALUES (?, ?)", tableName, fieldInGameUuid, fieldCurrentUsernameLowerCase
-                    )
-            )) {
-                statement.setBytes(1, datum.getValue1());
-                statement.setString(2, Optional.ofNullable(datum.getValue2()).map(String::toLowerCase).orElse(null));
-                statement.executeUpdate();
-            }
-        }
-        LoggerProvider.getLogger().info("Updated in game profile data, total " + oldData.size() + ".");
+        // 从老表升级数据
+        new TableMigrator(sqlManager, tableNameV2, tableName).migrate(connection, "in game profile data",
+                "SELECT in_game_uuid, current_username FROM " + tableNameV2 + " ORDER BY in_game_uuid",
+                String.format(
+                        "INSERT INTO %s (%s, %s) VALUES (?, ?)", tableName, fieldInGameUuid, fieldCurrentUsernameLowerCase
+                ),
+                (from, to) -> {
+                    to.setBytes(1, from.getBytes(1));
+                    to.setString(2, Optional.ofNullable(from.getString(2)).map(s -> s.toLowerCase(Locale.ROOT)).orElse(null));
+                });
     }
 
+    /**
+     * 获得游戏内档案，优先从缓存中读取
+     *
+     * @param inGameUUID 游戏内 UUID
+     * @return 游戏内 UUID 和用户名，档案不存在时返回 null
+     */
     public Pair<UUID, String> get(UUID inGameUUID) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE %s = ? LIMIT 1"
-                , fieldCurrentUsernameOriginal, tableName, fieldInGameUuid
-        );
-        try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+        Pair<UUID, String> cached = cache.getIfPresent(inGameUUID);
+        if (cached != null) return cached;
+        long generation = cache.generation();
+        Pair<UUID, String> result = select(inGameUUID);
+        cache.put(inGameUUID, result, generation);
+        return result;
+    }
+
+    private Pair<UUID, String> select(UUID inGameUUID) throws SQLException {
+        try (Connection connection = sqlManager.getPool().getReadConnection(inGameUUID);
+             PreparedStatement statement = connection.prepareStatement(sqlGet)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(inGameUUID));
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -113,12 +135,8 @@ public class InGameProfileTableV3 {
      * @return 游戏内 UUID
      */
     public UUID getInGameUUIDIgnoreCase(String currentUsername) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE LOWER(%s) = ? LIMIT 1"
-                , fieldInGameUuid, tableName, fieldCurrentUsernameLowerCase
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlGetInGameUUIDIgnoreCase)
         ) {
             statement.setString(1, currentUsername.toLowerCase(Locale.ROOT));
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -131,24 +149,37 @@ public class InGameProfileTableV3 {
     }
 
     /**
-     * 查询数据是否存在
+     * 一次查出用户名本身和所有 用户名 + 数字后缀 的占用情况，供名称修正分配空闲后缀
      *
-     * @param inGameUUID 游戏内 UUID
-     * @return 是否存在数据
+     * @param username 用户名
+     * @return 小写用户名 \ 占用它的游戏内 UUID，包含一些不是数字后缀的同前缀用户名
      */
-    public boolean dataExists(UUID inGameUUID) throws SQLException {
-        String sql = String.format(
-                "SELECT 1 FROM %s WHERE %s = ? LIMIT 1"
-                , tableName, fieldInGameUuid
-        );
+    public Map<String, UUID> getUsernamesWithSuffix(String username) throws SQLException {
+        String lowerCase = username.toLowerCase(Locale.ROOT);
+        Map<String, UUID> result = new HashMap<>();
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlGetUsernamesWithPrefix)
         ) {
-            statement.setBytes(1, ValueUtil.uuidToBytes(inGameUUID));
+            statement.setString(1, lowerCase.replace("!", "!!").replace("%", "!%").replace("_", "!_") + '%');
+            // 后缀最长为 int 的十位数字
+            statement.setInt(2, lowerCase.length() + 10);
             try (ResultSet resultSet = statement.executeQuery()) {
-                return resultSet.next();
+                while (resultSet.next()) {
+                    result.put(resultSet.getString(1), ValueUtil.bytesToUuid(resultSet.getBytes(2)));
+                }
             }
         }
+        return result;
+    }
+
+    /**
+     * 查询数据是否存在
+     *
+     * @param inGameUUID 游戏内 UUID
+     * @return 是否存在数据
+     */
+    public boolean dataExists(UUID inGameUUID) throws SQLException {
+        return get(inGameUUID) != null;
     }
 
     /**
@@ -157,21 +188,8 @@ public class InGameProfileTableV3 {
      * @param inGameUUID 游戏内 UUID
      */
     public String getUsername(UUID inGameUUID) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE %s = ? LIMIT 1"
-                , fieldCurrentUsernameOriginal, tableName, fieldInGameUuid
-        );
-        try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
-        ) {
-            statement.setBytes(1, ValueUtil.uuidToBytes(inGameUUID));
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    return resultSet.getString(1);
-                }
-            }
-        }
-        return null;
+        Pair<UUID, String> profile = get(inGameUUID);
+        return profile == null ? null : profile.getValue2();
     }
 
     /**
@@ -182,17 +200,16 @@ public class InGameProfileTableV3 {
      * @throws SQLException
      */
     public void updateUsername(UUID inGameUUID, String currentUsername) throws SQLException {
-        String sql = String.format(
-                "UPDATE %s SET %s = ?, %s = ? WHERE %s = ?"
-                , tableName, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal, fieldInGameUuid
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlUpdateUsername)
         ) {
             statement.setString(1, currentUsername.toLowerCase(Locale.ROOT));
             statement.setString(2, currentUsername);
             statement.setBytes(3, ValueUtil.uuidToBytes(inGameUUID));
             statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(inGameUUID);
+            cache.invalidate(inGameUUID);
         }
     }
 
@@ -202,32 +219,30 @@ public class InGameProfileTableV3 {
      * @param inGameUUID 游戏内 UUID
      */
     public void insertNewData(UUID inGameUUID, String currentUsername) throws SQLException {
-        String sql = String.format(
-                "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)"
-                , tableName, fieldInGameUuid, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlInsertNewData)
         ) {
             connection.setAutoCommit(false);
             statement.setBytes(1, ValueUtil.uuidToBytes(inGameUUID));
-            statement.setString(2, currentUsername.toLowerCase());
+            statement.setString(2, currentUsername.toLowerCase(Locale.ROOT));
             statement.setString(3, currentUsername);
             statement.executeUpdate();
             connection.commit();
+        } finally {
+            sqlManager.getPool().markWritten(inGameUUID);
+            cache.invalidate(inGameUUID);
         }
     }
 
     public boolean remove(UUID uuid) throws SQLException {
-        String sql = String.format(
-                "DELETE FROM %s WHERE %s = ?"
-                , tableName, fieldInGameUuid
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlRemove)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(uuid));
             return statement.executeUpdate() == 1;
+        } finally {
+            sqlManager.getPool().markWritten(uuid);
+            cache.invalidate(uuid);
         }
     }
 
@@ -237,31 +252,29 @@ public class InGameProfileTableV3 {
      * @param currentUsername 用户名
      */
     public int eraseUsername(String currentUsername) throws SQLException {
-        String sql = String.format(
-                "UPDATE %s SET %s = ?, %s = ? WHERE LOWER(%s) = ?"
-                , tableName, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal, fieldCurrentUsernameLowerCase
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlEraseUsername)
         ) {
             statement.setString(1, null);
             statement.setString(2, null);
             statement.setString(3, currentUsername.toLowerCase(Locale.ROOT));
             return statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(null);
+            cache.invalidateIf(profile -> currentUsername.equalsIgnoreCase(profile.getValue2()));
         }
     }
 
     public int eraseAllUsername() throws SQLException {
-        String sql = String.format(
-                "UPDATE %s SET %s = ?, %s = ?"
-                , tableName, fieldCurrentUsernameLowerCase, fieldCurrentUsernameOriginal
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlEraseAllUsername)
         ) {
             statement.setString(1, null);
             statement.setString(2, null);
             return statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(null);
+            cache.invalidateAll();
         }
     }
 }
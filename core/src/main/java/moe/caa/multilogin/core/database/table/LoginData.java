@@ -0,0 +1,130 @@
+package moe.caa.multilogin.core.database.table;
+
+import lombok.Getter;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * 一次登录所需的玩家数据
+ * <p>
+ * 由 {@link LoginDataAccess#load(UUID, int)} 一次性读出，验证流程中的修改只记录在这里，
+ * 最后由 {@link LoginDataAccess#apply(LoginData)} 在同一个事务中写入。
+ */
+@Getter
+public class LoginData {
+    private final UUID onlineUUID;
+    private final int serviceId;
+
+    // 玩家数据表
+    private boolean userDataExists;
+    private String onlineName;
+    private UUID inGameUUID;
+    private boolean whitelist;
+
+    // 游戏内档案表
+    private boolean profileExists;
+    private String inGameUsername;
+
+    // 需要写入的数据
+    private boolean insertUserData = false;
+    private boolean onlineNameChanged = false;
+    private boolean whitelistChanged = false;
+    private boolean inGameUUIDChanged = false;
+    // 本次登录分配了新的游戏内 UUID，需要在写入时占用
+    private boolean inGameUUIDClaimed = false;
+    private String erasedUsername = null;
+    private ProfileWrite profileWrite = ProfileWrite.NONE;
+    // 在内存中预留的小写用户名
+    private String reservedUsername = null;
+
+    LoginData(UUID onlineUUID, int serviceId, boolean userDataExists, String onlineName, UUID inGameUUID,
+              boolean whitelist, boolean profileExists, String inGameUsername) {
+        this.onlineUUID = onlineUUID;
+        this.serviceId = serviceId;
+        this.userDataExists = userDataExists;
+        this.onlineName = onlineName;
+        this.inGameUUID = inGameUUID;
+        this.whitelist = whitelist;
+        this.profileExists = profileExists;
+        this.inGameUsername = inGameUsername;
+    }
+
+    /**
+     * 插入新的玩家数据
+     *
+     * @param onlineName 在线名称
+     */
+    public void insertUserData(String onlineName) {
+        this.userDataExists = true;
+        this.insertUserData = true;
+        this.onlineName = onlineName;
+    }
+
+    /**
+     * 设置在线名称
+     */
+    public void setOnlineName(String onlineName) {
+        this.onlineName = onlineName;
+        this.onlineNameChanged = true;
+    }
+
+    /**
+     * 设置白名单
+     */
+    public void setWhitelist(boolean whitelist) {
+        this.whitelist = whitelist;
+        this.whitelistChanged = true;
+    }
+
+    /**
+     * 设置一个新分配的游戏内 UUID，写入时先插入一条没有用户名的档案来占用它
+     */
+    public void claimInGameUUID(UUID inGameUUID) {
+        this.inGameUUID = inGameUUID;
+        this.inGameUUIDChanged = true;
+        this.inGameUUIDClaimed = true;
+        this.profileExists = true;
+        this.inGameUsername = null;
+    }
+
+    /**
+     * 新分配的游戏内 UUID 在写入时已被占用，换成另一个
+     */
+    void reclaimInGameUUID(UUID inGameUUID) {
+        this.inGameUUID = inGameUUID;
+    }
+
+    /**
+     * 擦除当前游戏内档案的用户名
+     */
+    public void eraseUsername() {
+        if (inGameUsername == null) return;
+        this.erasedUsername = inGameUsername.toLowerCase(Locale.ROOT);
+        this.inGameUsername = null;
+    }
+
+    /**
+     * 设置游戏内档案的用户名，档案不存在时插入新的档案
+     */
+    public void setInGameUsername(String username) {
+        this.profileWrite = profileExists ? ProfileWrite.UPDATE : ProfileWrite.INSERT;
+        this.inGameUsername = username;
+    }
+
+    void setReservedUsername(String reservedUsername) {
+        this.reservedUsername = reservedUsername;
+    }
+
+    /**
+     * 返回是否有需要在事务中写入的数据，在线名称的修改由写入队列写入，不包含在内
+     */
+    public boolean isDirty() {
+        return insertUserData || whitelistChanged || inGameUUIDChanged
+                || erasedUsername != null || profileWrite != ProfileWrite.NONE;
+    }
+
+    public enum ProfileWrite {
+        NONE, INSERT, UPDATE
+    }
+}
@@ -0,0 +1,321 @@
+package moe.caa.multilogin.core.database.table;
+
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.util.Pair;
+import moe.caa.multilogin.api.util.There;
+import moe.caa.multilogin.api.util.ValueUtil;
+import moe.caa.multilogin.core.database.DataCache;
+import moe.caa.multilogin.core.database.SQLManager;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 登录数据访问
+ * <p>
+ * 一次登录所需的玩家数据和游戏内档案通过一条联表查询读出，验证流程结束后在同一个事务中写入修改，
+ * 避免登录时反复借用连接和多次往返数据库。
+ * 读取时优先使用数据表的缓存，缓存都命中时不访问数据库。
+ */
+public class LoginDataAccess {
+    private final SQLManager sqlManager;
+    // 正在登录的玩家预留的小写用户名 \ 游戏内 UUID，写入数据库之前其他登录不能分配它
+    private final Map<String, UUID> reservedUsernames = new ConcurrentHashMap<>();
+
+    private final String sqlLoad;
+    private final String sqlInsertUserData;
+    // 按 白名单、游戏内 UUID 是否修改 的位组合索引，在线名称由写入队列写入
+    private final String[] sqlUpdateUserData = new String[4];
+    private final String sqlEraseUsername;
+    private final String sqlClaimProfile;
+    private final String sqlInsertProfile;
+    private final String sqlUpdateProfile;
+
+    public LoginDataAccess(SQLManager sqlManager, String userDataTableName, String inGameProfileTableName) {
+        this.sqlManager = sqlManager;
+        this.sqlLoad = String.format(
+                "SELECT u.%s, u.%s, u.%s, p.%s, p.%s FROM %s u LEFT JOIN %s p ON p.%s = u.%s WHERE u.%s = ? AND u.%s = ? LIMIT 1"
+                , UserDataTableV3.fieldOnlineName, UserDataTableV3.fieldInGameProfileUuid, UserDataTableV3.fieldWhitelist
+                , InGameProfileTableV3.fieldInGameUuid, InGameProfileTableV3.fieldCurrentUsernameOriginal
+                , userDataTableName, inGameProfileTableName
+                , InGameProfileTableV3.fieldInGameUuid, UserDataTableV3.fieldInGameProfileUuid
+                , UserDataTableV3.fieldOnlineUUID, UserDataTableV3.fieldServiceId
+        );
+        this.sqlInsertUserData = String.format(
+                "INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?)"
+                , userDataTableName, UserDataTableV3.fieldOnlineUUID, UserDataTableV3.fieldServiceId
+                , UserDataTableV3.fieldOnlineName, UserDataTableV3.fieldOnlineNameLowerCase
+                , UserDataTableV3.fieldInGameProfileUuid, UserDataTableV3.fieldWhitelist
+        );
+        for (int mask = 1; mask < sqlUpdateUserData.length; mask++) {
+            List<String> columns = new ArrayList<>();
+            if ((mask & 1) != 0) columns.add(UserDataTableV3.fieldWhitelist);
+            if ((mask & 2) != 0) columns.add(UserDataTableV3.fieldInGameProfileUuid);
+            sqlUpdateUserData[mask] = String.format(
+                    "UPDATE %s SET %s = ? WHERE %s = ? AND %s = ?"
+                    , userDataTableName, String.join(" = ?, ", columns)
+                    , UserDataTableV3.fieldOnlineUUID, UserDataTableV3.fieldServiceId
+            );
+        }
+        this.sqlEraseUsername = String.format(
+                "UPDATE %s SET %s = ?, %s = ? WHERE %s = ?"
+                , inGameProfileTableName, InGameProfileTableV3.fieldCurrentUsernameLowerCase
+                , InGameProfileTableV3.fieldCurrentUsernameOriginal, InGameProfileTableV3.fieldCurrentUsernameLowerCase
+        );
+        this.sqlClaimProfile = String.format(
+                "INSERT INTO %s (%s) VALUES (?)"
+                , inGameProfileTableName, InGameProfileTableV3.fieldInGameUuid
+        );
+        this.sqlInsertProfile = String.format(
+                "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)"
+                , inGameProfileTableName, InGameProfileTableV3.fieldCurrentUsernameLowerCase
+                , InGameProfileTableV3.fieldCurrentUsernameOriginal, InGameProfileTableV3.fieldInGameUuid
+        );
+        this.sqlUpdateProfile = String.format(
+                "UPDATE %s SET %s = ?, %s = ? WHERE %s = ?"
+                , inGameProfileTableName, InGameProfileTableV3.fieldCurrentUsernameLowerCase
+                , InGameProfileTableV3.fieldCurrentUsernameOriginal, InGameProfileTableV3.fieldInGameUuid
+        );
+    }
+
+    /**
+     * 读取一次登录所需的数据
+     *
+     * @param onlineUUID 在线 UUID
+     * @param serviceId  验证服务器 ID
+     * @return 登录数据，玩家数据不存在时 {@link LoginData#isUserDataExists()} 为 false
+     */
+    public LoginData load(UUID onlineUUID, int serviceId) throws SQLException {
+        DataCache<Pair<UUID, Integer>, There<String, UUID, Boolean>> userDataCache = sqlManager.getUserDataTable().getCache();
+        DataCache<UUID, Pair<UUID, String>> profileCache = sqlManager.getInGameProfileTable().getCache();
+        Pair<UUID, Integer> key = new Pair<>(onlineUUID, serviceId);
+
+        There<String, UUID, Boolean> userData = userDataCache.getIfPresent(key);
+        if (userData != null) {
+            String onlineName = pendingOnlineName(onlineUUID, serviceId, userData.getValue1());
+            UUID inGameUUID = userData.getValue2();
+            if (inGameUUID == null) {
+                return new LoginData(onlineUUID, serviceId, true, onlineName, null, userData.getValue3(), false, null);
+            }
+            Pair<UUID, String> profile = profileCache.getIfPresent(inGameUUID);
+            if (profile != null) {
+                return new LoginData(onlineUUID, serviceId, true, onlineName, inGameUUID, userData.getValue3(), true, profile.getValue2());
+            }
+        }
+
+        long userDataGeneration = userDataCache.generation();
+        long profileGeneration = profileCache.generation();
+        LoginData data;
+        try (Connection connection = sqlManager.getPool().getReadConnection(key)) {
+            data = query(connection, onlineUUID, serviceId);
+        }
+        // 玩家数据刚写入时已经从主库读取，但游戏内档案可能是其他玩家刚写入的，副本上还是旧数据
+        if (data.getInGameUUID() != null && sqlManager.getPool().isRecentlyWritten(data.getInGameUUID())) {
+            try (Connection connection = sqlManager.getPool().getConnection()) {
+                data = query(connection, onlineUUID, serviceId);
+            }
+        }
+
+        if (data.isUserDataExists()) {
+            userDataCache.put(key, new There<>(data.getOnlineName(), data.getInGameUUID(), data.isWhitelist()), userDataGeneration);
+            if (data.isProfileExists()) {
+                profileCache.put(data.getInGameUUID(), new Pair<>(data.getInGameUUID(), data.getInGameUsername()), profileGeneration);
+            }
+        }
+        return data;
+    }
+
+    private LoginData query(Connection connection, UUID onlineUUID, int serviceId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sqlLoad)) {
+            statement.setBytes(1, ValueUtil.uuidToBytes(onlineUUID));
+            statement.setInt(2, serviceId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return new LoginData(onlineUUID, serviceId, false, null, null, false, false, null);
+                }
+                String onlineName = pendingOnlineName(onlineUUID, serviceId, resultSet.getString(1));
+                byte[] inGameUUIDBytes = resultSet.getBytes(2);
+                UUID inGameUUID = inGameUUIDBytes == null ? null : ValueUtil.bytesToUuid(inGameUUIDBytes);
+                boolean whitelist = resultSet.getBoolean(3);
+                boolean profileExists = resultSet.getBytes(4) != null;
+                String inGameUsername = resultSet.getString(5);
+                return new LoginData(onlineUUID, serviceId, true, onlineName, inGameUUID, whitelist, profileExists, inGameUsername);
+            }
+        }
+    }
+
+    // 在线名称由写入队列延迟写入，还没有写入时以队列中的为准
+    private String pendingOnlineName(UUID onlineUUID, int serviceId, String onlineName) {
+        String pending = sqlManager.getWriteQueue().getPendingOnlineName(onlineUUID, serviceId);
+        return pending == null ? onlineName : pending;
+    }
+
+    /**
+     * 在同一个事务中写入登录数据的修改
+     *
+     * @param data 登录数据
+     * @return 游戏内档案的用户名是否写入成功，用户名已被占用时返回 false，其他修改仍然会被写入
+     */
+    public boolean apply(LoginData data) throws SQLException {
+        if (data.isOnlineNameChanged()) {
+            // 在线名称不影响登录结果，交给写入队列合并后批量写入
+            sqlManager.getWriteQueue().setOnlineName(data.getOnlineUUID(), data.getServiceId(), data.getOnlineName());
+        }
+        if (!data.isDirty()) return true;
+        try (Connection connection = sqlManager.getPool().getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                if (data.isInGameUUIDClaimed()) {
+                    claimInGameUUID(connection, data);
+                }
+                writeUserData(connection, data);
+                if (data.getErasedUsername() != null) {
+                    eraseUsername(connection, data.getErasedUsername());
+                }
+                boolean profileWritten = true;
+                if (data.getProfileWrite() != LoginData.ProfileWrite.NONE) {
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        writeProfile(connection, data);
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        // 用户名已被占用，只回滚档案的修改
+                        connection.rollback(savepoint);
+                        profileWritten = false;
+                    }
+                }
+                connection.commit();
+                return profileWritten;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            invalidate(data);
+        }
+    }
+
+    // 写入完成后再使缓存失效，避免并发的读取把旧数据重新放入缓存
+    private void invalidate(LoginData data) {
+        Pair<UUID, Integer> key = new Pair<>(data.getOnlineUUID(), data.getServiceId());
+        sqlManager.getPool().markWritten(key);
+        sqlManager.getUserDataTable().getCache().invalidate(key);
+        DataCache<UUID, Pair<UUID, String>> profileCache = sqlManager.getInGameProfileTable().getCache();
+        if (data.getInGameUUID() != null) {
+            sqlManager.getPool().markWritten(data.getInGameUUID());
+            profileCache.invalidate(data.getInGameUUID());
+        }
+        if (data.getErasedUsername() != null) {
+            sqlManager.getPool().markWritten(null);
+            profileCache.invalidateIf(profile -> data.getErasedUsername().equalsIgnoreCase(profile.getValue2()));
+        }
+    }
+
+    /**
+     * 为登录预留一个用户名，每次登录只预留一个，重新预留时释放之前的
+     *
+     * @param data     登录数据
+     * @param username 用户名
+     * @return 是否预留成功，用户名被其他正在登录的档案预留时返回 false
+     */
+    public boolean reserveUsername(LoginData data, String username) {
+        String lowerCase = username.toLowerCase(Locale.ROOT);
+        UUID owner = reservedUsernames.putIfAbsent(lowerCase, data.getInGameUUID());
+        if (owner != null && !owner.equals(data.getInGameUUID())) return false;
+        if (data.getReservedUsername() != null && !data.getReservedUsername().equals(lowerCase)) {
+            reservedUsernames.remove(data.getReservedUsername(), data.getInGameUUID());
+        }
+        data.setReservedUsername(lowerCase);
+        return true;
+    }
+
+    /**
+     * 释放登录预留的用户名，需要在写入数据之后调用
+     *
+     * @param data 登录数据
+     */
+    public void release(LoginData data) {
+        if (data.getReservedUsername() != null) {
+            reservedUsernames.remove(data.getReservedUsername(), data.getInGameUUID());
+            data.setReservedUsername(null);
+        }
+    }
+
+    // 在事务中插入一条没有用户名的档案来占用新的游戏内 UUID，由主键保证多个线程和多个代理之间的原子性。
+    // 写入失败时占用随事务一起回滚，不会留下没有玩家数据引用的档案。
+    private void claimInGameUUID(Connection connection, LoginData data) throws SQLException {
+        while (true) {
+            Savepoint savepoint = connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(sqlClaimProfile)) {
+                statement.setBytes(1, ValueUtil.uuidToBytes(data.getInGameUUID()));
+                statement.executeUpdate();
+                return;
+            } catch (SQLIntegrityConstraintViolationException e) {
+                connection.rollback(savepoint);
+                LoggerProvider.getLogger().warn(String.format("UUID %s has been used and will take a random value.", data.getInGameUUID().toString()));
+                UUID inGameUUID = UUID.randomUUID();
+                if (data.getReservedUsername() != null) {
+                    reservedUsernames.replace(data.getReservedUsername(), data.getInGameUUID(), inGameUUID);
+                }
+                data.reclaimInGameUUID(inGameUUID);
+            }
+        }
+    }
+
+    private void writeUserData(Connection connection, LoginData data) throws SQLException {
+        if (data.isInsertUserData()) {
+            try (PreparedStatement statement = connection.prepareStatement(sqlInsertUserData)) {
+                statement.setBytes(1, ValueUtil.uuidToBytes(data.getOnlineUUID()));
+                statement.setInt(2, data.getServiceId());
+                statement.setString(3, data.getOnlineName());
+                statement.setString(4, UserDataTableV3.toLowerCase(data.getOnlineName()));
+                if (data.getInGameUUID() == null) {
+                    statement.setNull(5, Types.BINARY);
+                } else {
+                    statement.setBytes(5, ValueUtil.uuidToBytes(data.getInGameUUID()));
+                }
+                statement.setBoolean(6, data.isWhitelist());
+                statement.executeUpdate();
+            }
+            return;
+        }
+
+        int mask = (data.isWhitelistChanged() ? 1 : 0)
+                | (data.isInGameUUIDChanged() ? 2 : 0);
+        if (mask == 0) return;
+
+        try (PreparedStatement statement = connection.prepareStatement(sqlUpdateUserData[mask])) {
+            int i = 1;
+            if (data.isWhitelistChanged()) statement.setBoolean(i++, data.isWhitelist());
+            if (data.isInGameUUIDChanged()) statement.setBytes(i++, ValueUtil.uuidToBytes(data.getInGameUUID()));
+            statement.setBytes(i++, ValueUtil.uuidToBytes(data.getOnlineUUID()));
+            statement.setInt(i, data.getServiceId());
+            statement.executeUpdate();
+        }
+    }
+
+    private void eraseUsername(Connection connection, String lowerCaseUsername) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sqlEraseUsername)) {
+            statement.setString(1, null);
+            statement.setString(2, null);
+            statement.setString(3, lowerCaseUsername);
+            statement.executeUpdate();
+        }
+    }
+
+    private void writeProfile(Connection connection, LoginData data) throws SQLException {
+        String sql = data.getProfileWrite() == LoginData.ProfileWrite.INSERT ? sqlInsertProfile : sqlUpdateProfile;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, data.getInGameUsername().toLowerCase(Locale.ROOT));
+            statement.setString(2, data.getInGameUsername());
+            statement.setBytes(3, ValueUtil.uuidToBytes(data.getInGameUUID()));
+            statement.executeUpdate();
+        }
+    }
+}
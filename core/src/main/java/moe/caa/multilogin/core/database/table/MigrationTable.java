@@ -0,0 +1,97 @@
+package moe.caa.multilogin.core.database.table;
+
+import moe.caa.multilogin.core.database.SQLManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+
+/**
+ * 数据升级进度表
+ * <p>
+ * 记录每个数据升级已经迁移的条数，升级中断后重启时从记录的位置继续。
+ */
+public class MigrationTable {
+    /**
+     * 表示数据升级已经完成
+     */
+    public static final long FINISHED = -1;
+    private static final String fieldName = "name";
+    private static final String fieldMigrated = "migrated";
+    private final SQLManager sqlManager;
+    private final String tableName;
+
+    private final String sqlGetProgress;
+    private final String sqlUpdateProgress;
+    private final String sqlInsertProgress;
+
+    public MigrationTable(SQLManager sqlManager, String tableName) {
+        this.sqlManager = sqlManager;
+        this.tableName = tableName;
+        this.sqlGetProgress = String.format(
+                "SELECT %s FROM %s WHERE %s = ? LIMIT 1"
+                , fieldMigrated, tableName, fieldName
+        );
+        this.sqlUpdateProgress = String.format(
+                "UPDATE %s SET %s = ? WHERE %s = ?"
+                , tableName, fieldMigrated, fieldName
+        );
+        this.sqlInsertProgress = String.format(
+                "INSERT INTO %s (%s, %s) VALUES (?, ?)"
+                , tableName, fieldName, fieldMigrated
+        );
+    }
+
+    public void init(Connection connection) throws SQLException {
+        String sql = MessageFormat.format(
+                "CREATE TABLE IF NOT EXISTS {0} ( " +
+                        "{1} VARCHAR(64) NOT NULL, " +
+                        "{2} BIGINT NOT NULL, " +
+                        "PRIMARY KEY ( {1} ))"
+                , tableName, fieldName, fieldMigrated);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * 获得数据升级的进度
+     *
+     * @param connection 连接
+     * @param name       数据升级名称
+     * @return 已经迁移的条数，已完成时返回 {@link #FINISHED}，没有记录时返回 null
+     */
+    public Long getProgress(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sqlGetProgress)) {
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getLong(1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 设置数据升级的进度，和迁移的数据在同一个事务中提交
+     *
+     * @param connection 连接
+     * @param name       数据升级名称
+     * @param migrated   已经迁移的条数，或 {@link #FINISHED}
+     */
+    public void setProgress(Connection connection, String name, long migrated) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sqlUpdateProgress)) {
+            statement.setLong(1, migrated);
+            statement.setString(2, name);
+            if (statement.executeUpdate() != 0) return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sqlInsertProgress)) {
+            statement.setString(1, name);
+            statement.setLong(2, migrated);
+            statement.executeUpdate();
+        }
+    }
+}
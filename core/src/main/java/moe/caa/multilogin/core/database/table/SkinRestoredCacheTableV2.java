@@ -1,16 +1,22 @@
 package moe.caa.multilogin.core.database.table;
 
+import lombok.Getter;
 import moe.caa.multilogin.api.util.Pair;
+import moe.caa.multilogin.api.util.ValueUtil;
+import moe.caa.multilogin.core.database.DataCache;
 import moe.caa.multilogin.core.database.SQLManager;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
 import java.text.MessageFormat;
+import java.util.Map;
 
 /**
  * 皮肤修复缓存表
+ * <p>
+ * 表前有以皮肤 URL 和皮肤模型为键的修复结果缓存，
+ * 老玩家重复登录时不需要计算 URL 的摘要，也不需要查询数据库。
  */
 public class SkinRestoredCacheTableV2 {
     private static final String fieldCurrentSkinUrlSha256 = "current_skin_url_sha256";
@@ -19,10 +25,26 @@ public class SkinRestoredCacheTableV2 {
     private static final String fieldRestorerSignature = "restorer_signature";
     private final SQLManager sqlManager;
     private final String tableName;
+    // 皮肤 URL 和皮肤模型 \ 修复后的值和签名
+    @Getter
+    private final DataCache<Pair<String, String>, Pair<String, String>> cache;
 
-    public SkinRestoredCacheTableV2(SQLManager sqlManager, String tableName) {
+    private final String sqlGetCacheRestored;
+    private final String sqlInsertNew;
+
+    public SkinRestoredCacheTableV2(SQLManager sqlManager, String tableName,
+                                    DataCache<Pair<String, String>, Pair<String, String>> cache) {
         this.sqlManager = sqlManager;
         this.tableName = tableName;
+        this.cache = cache;
+        this.sqlGetCacheRestored = String.format(
+                "SELECT %s, %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
+                , fieldRestorerValue, fieldRestorerSignature, tableName, fieldCurrentSkinUrlSha256, fieldCurrentSkinModel
+        );
+        this.sqlInsertNew = String.format(
+                "INSERT INTO %s (%s, %s, %s, %s) VALUES (?, ?, ?, ?) "
+                , tableName, fieldCurrentSkinUrlSha256, fieldCurrentSkinModel, fieldRestorerValue, fieldRestorerSignature
+        );
     }
 
     public void init(Connection connection) throws SQLException {
@@ -40,19 +62,29 @@ public class SkinRestoredCacheTableV2 {
     }
 
     /**
-     * 获得缓存的数据对象
+     * 获得缓存的数据对象，优先从内存缓存中读取
      *
-     * @param urlSha256 皮肤 URL
-     * @param model     皮肤模型
+     * @param url   皮肤 URL
+     * @param model 皮肤模型
      * @return 缓存的对象
      */
-    public Pair<String, String> getCacheRestored(byte[] urlSha256, String model) throws SQLException {
-        String sql = String.format(
-                "SELECT %s, %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
-                , fieldRestorerValue, fieldRestorerSignature, tableName, fieldCurrentSkinUrlSha256, fieldCurrentSkinModel
-        );
+    public Pair<String, String> getCacheRestored(String url, String model) throws SQLException, NoSuchAlgorithmException {
+        Pair<String, String> key = new Pair<>(url, model);
+        Pair<String, String> cached = cache.getIfPresent(key);
+        if (cached != null) return cached;
+        long generation = cache.generation();
+        byte[] urlSha256 = ValueUtil.sha256(url);
+        Pair<String, String> result = sqlManager.getWriteQueue().getPendingSkinRestored(urlSha256, model);
+        if (result == null) {
+            result = select(urlSha256, model);
+        }
+        cache.put(key, result, generation);
+        return result;
+    }
+
+    private Pair<String, String> select(byte[] urlSha256, String model) throws SQLException {
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlGetCacheRestored)
         ) {
             statement.setBytes(1, urlSha256);
             statement.setString(2, model);
@@ -74,12 +106,8 @@ public class SkinRestoredCacheTableV2 {
      * @param signature 签名
      */
     public void insertNew(byte[] urlSha256, String model, String value, String signature) throws SQLException {
-        String sql = String.format(
-                "INSERT INTO %s (%s, %s, %s, %s) VALUES (?, ?, ?, ?) "
-                , tableName, fieldCurrentSkinUrlSha256, fieldCurrentSkinModel, fieldRestorerValue, fieldRestorerSignature
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlInsertNew)
         ) {
             statement.setBytes(1, urlSha256);
             statement.setString(2, model);
@@ -88,4 +116,45 @@ public class SkinRestoredCacheTableV2 {
             statement.executeUpdate();
         }
     }
+
+    /**
+     * 批量插入新的缓存对象，已经存在的缓存对象会被跳过
+     *
+     * @param restored 皮肤 URL 的 SHA256 和皮肤模型 \ 值和签名
+     */
+    public void insertNew(Map<Pair<ByteBuffer, String>, Pair<String, String>> restored) throws SQLException {
+        try (Connection connection = sqlManager.getPool().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlInsertNew)
+        ) {
+            connection.setAutoCommit(false);
+            for (Map.Entry<Pair<ByteBuffer, String>, Pair<String, String>> entry : restored.entrySet()) {
+                setInsertParameters(statement, entry);
+                statement.addBatch();
+            }
+            try {
+                statement.executeBatch();
+                connection.commit();
+                return;
+            } catch (BatchUpdateException e) {
+                // 其他代理或并发的修复已经写入了部分数据，逐条重新插入并跳过它们
+                connection.rollback();
+                statement.clearBatch();
+            }
+            connection.setAutoCommit(true);
+            for (Map.Entry<Pair<ByteBuffer, String>, Pair<String, String>> entry : restored.entrySet()) {
+                setInsertParameters(statement, entry);
+                try {
+                    statement.executeUpdate();
+                } catch (SQLIntegrityConstraintViolationException ignored) {
+                }
+            }
+        }
+    }
+
+    private void setInsertParameters(PreparedStatement statement, Map.Entry<Pair<ByteBuffer, String>, Pair<String, String>> entry) throws SQLException {
+        statement.setBytes(1, entry.getKey().getValue1().array());
+        statement.setString(2, entry.getKey().getValue2());
+        statement.setString(3, entry.getValue().getValue1());
+        statement.setString(4, entry.getValue().getValue2());
+    }
 }
@@ -0,0 +1,117 @@
+package moe.caa.multilogin.core.database.table;
+
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.core.database.SQLManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 数据表升级程序
+ * <p>
+ * 以只进游标流式读取老表，分批写入新表。每批数据和进度在同一个事务中提交，
+ * 中断后重启时跳过已经迁移的条数继续升级。
+ */
+class TableMigrator {
+    private static final int batchSize = 1000;
+    private static final int reportInterval = 10000;
+
+    private final SQLManager sqlManager;
+    private final String name;
+    private final String sourceTable;
+    private final String targetTable;
+
+    TableMigrator(SQLManager sqlManager, String sourceTable, String targetTable) {
+        this.sqlManager = sqlManager;
+        this.name = targetTable;
+        this.sourceTable = sourceTable;
+        this.targetTable = targetTable;
+    }
+
+    /**
+     * 开始升级
+     *
+     * @param connection 写入新表的连接
+     * @param displayName 日志中显示的数据名称
+     * @param selectSql  读取老表的语句，必须有稳定的排序
+     * @param insertSql  写入新表的语句
+     * @param copier     将一行老数据设置到写入语句上
+     */
+    void migrate(Connection connection, String displayName, String selectSql, String insertSql, RowCopier copier) throws SQLException {
+        MigrationTable migrationTable = sqlManager.getMigrationTable();
+        Long progress = migrationTable.getProgress(connection, name);
+        if (progress != null && progress == MigrationTable.FINISHED) return;
+
+        long total = count(connection, sourceTable);
+        if (progress == null && (total <= 0 || count(connection, targetTable) != 0)) {
+            // 老表不存在或没有数据，或新表里已经有数据，不需要升级
+            migrationTable.setProgress(connection, name, MigrationTable.FINISHED);
+            return;
+        }
+        long migrated = progress == null ? 0 : progress;
+        if (migrated == 0) {
+            LoggerProvider.getLogger().info(String.format("Updating %s, total %d...", displayName, total));
+        } else {
+            LoggerProvider.getLogger().info(String.format("Resuming the update of %s from %d/%d...", displayName, migrated, total));
+        }
+
+        try (Connection readConnection = sqlManager.getPool().getConnection();
+             PreparedStatement select = readConnection.prepareStatement(selectSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             PreparedStatement insert = connection.prepareStatement(insertSql)
+        ) {
+            select.setFetchSize(sqlManager.getPool().getStreamingFetchSize());
+            try (ResultSet resultSet = select.executeQuery()) {
+                long skipped = 0;
+                int batch = 0;
+                while (resultSet.next()) {
+                    // 跳过上次已经迁移的数据
+                    if (skipped < migrated) {
+                        skipped++;
+                        continue;
+                    }
+                    copier.copy(resultSet, insert);
+                    insert.addBatch();
+                    if (++batch < batchSize) continue;
+
+                    insert.executeBatch();
+                    migrated += batch;
+                    batch = 0;
+                    migrationTable.setProgress(connection, name, migrated);
+                    connection.commit();
+                    if (migrated % reportInterval == 0) {
+                        LoggerProvider.getLogger().info(String.format("Updating %s, %d/%d.", displayName, migrated, total));
+                    }
+                }
+                if (batch != 0) {
+                    insert.executeBatch();
+                    migrated += batch;
+                }
+            }
+        }
+        migrationTable.setProgress(connection, name, MigrationTable.FINISHED);
+        connection.commit();
+        LoggerProvider.getLogger().info(String.format("Updated %s, total %d.", displayName, migrated));
+    }
+
+    private static long count(Connection connection, String table) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(0) FROM " + table);
+             ResultSet resultSet = statement.executeQuery()
+        ) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            // 表不存在
+            return -1;
+        }
+    }
+
+    /**
+     * 将一行老数据设置到写入语句上
+     */
+    @FunctionalInterface
+    interface RowCopier {
+        void copy(ResultSet from, PreparedStatement to) throws SQLException;
+    }
+}
@@ -1,9 +1,11 @@
 package moe.caa.multilogin.core.database.table;
 
-import lombok.AllArgsConstructor;
+import lombok.Getter;
 import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.util.Pair;
 import moe.caa.multilogin.api.util.There;
 import moe.caa.multilogin.api.util.ValueUtil;
+import moe.caa.multilogin.core.database.DataCache;
 import moe.caa.multilogin.core.database.SQLManager;
 
 import java.sql.*;
@@ -14,19 +16,90 @@ import java.util.*;
  * 玩家数据表
  */
 public class UserDataTableV3 {
-    private static final String fieldOnlineUUID = "online_uuid";
-    private static final String fieldOnlineName = "online_name";
-    private static final String fieldServiceId = "service_id";
-    private static final String fieldInGameProfileUuid = "in_game_profile_uuid";
-    private static final String fieldWhitelist = "whitelist";
+    static final String fieldOnlineUUID = "online_uuid";
+    static final String fieldOnlineName = "online_name";
+    static final String fieldServiceId = "service_id";
+    static final String fieldInGameProfileUuid = "in_game_profile_uuid";
+    static final String fieldWhitelist = "whitelist";
+    static final String fieldOnlineNameLowerCase = "online_name_lower_case";
+    private static final int backfillBatchSize = 1000;
     private final SQLManager sqlManager;
     private final String tableName;
     private final String tableNameV2;
+    // 在线 UUID 和验证服务器 ID \ 在线名称、游戏内 UUID 和白名单
+    @Getter
+    private final DataCache<Pair<UUID, Integer>, There<String, UUID, Boolean>> cache;
+    // 小写在线名称回填完成前，按在线名称的查询仍然需要 LOWER() 扫描
+    private volatile boolean onlineNameLowerCaseReady = false;
 
-    public UserDataTableV3(SQLManager sqlManager, String tableName, String tableNameV2) {
+    // 表名在构造时确定，SQL 语句只需生成一次
+    private final String sqlGet;
+    private final String sqlGetOnlineUUID;
+    private final String sqlGetOnlineUUIDScan;
+    private final String sqlBackfillOnlineNameLowerCase;
+    private final String sqlGetOnlineServiceIds;
+    private final String sqlGetOnlineProfiles;
+    private final String sqlSetInGameUUID;
+    private final String sqlInsertNewData;
+    private final String sqlSetWhitelist;
+    private final String sqlHasWhitelistByInGameUUID;
+    private final String sqlSetWhitelistByInGameUUID;
+    private final String sqlSetOnlineName;
+
+    public UserDataTableV3(SQLManager sqlManager, String tableName, String tableNameV2,
+                           DataCache<Pair<UUID, Integer>, There<String, UUID, Boolean>> cache) {
         this.sqlManager = sqlManager;
         this.tableName = tableName;
         this.tableNameV2 = tableNameV2;
+        this.cache = cache;
+        this.sqlGet = String.format(
+                "SELECT %s, %s, %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
+                , fieldOnlineName, fieldInGameProfileUuid, fieldWhitelist, tableName, fieldOnlineUUID, fieldServiceId
+        );
+        this.sqlGetOnlineUUID = String.format(
+                "SELECT %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
+                , fieldOnlineUUID, tableName, fieldOnlineNameLowerCase, fieldServiceId
+        );
+        this.sqlGetOnlineUUIDScan = String.format(
+                "SELECT %s FROM %s WHERE lower(%s) = ? AND %s = ? LIMIT 1"
+                , fieldOnlineUUID, tableName, fieldOnlineName, fieldServiceId
+        );
+        this.sqlBackfillOnlineNameLowerCase = String.format(
+                "UPDATE %s SET %s = LOWER(%s) WHERE %s IS NULL AND %s IS NOT NULL LIMIT %d"
+                , tableName, fieldOnlineNameLowerCase, fieldOnlineName, fieldOnlineNameLowerCase, fieldOnlineName, backfillBatchSize
+        );
+        this.sqlGetOnlineServiceIds = String.format(
+                "SELECT %s FROM %s WHERE %s = ?"
+                , fieldServiceId, tableName, fieldInGameProfileUuid
+        );
+        this.sqlGetOnlineProfiles = String.format(
+                "SELECT %s, %s, %s FROM %s WHERE %s = ?"
+                , fieldOnlineUUID, fieldOnlineName, fieldServiceId, tableName, fieldInGameProfileUuid
+        );
+        this.sqlSetInGameUUID = String.format(
+                "UPDATE %s SET %s = ? WHERE %s = ? AND %s = ? LIMIT 1"
+                , tableName, fieldInGameProfileUuid, fieldOnlineUUID, fieldServiceId
+        );
+        this.sqlInsertNewData = String.format(
+                "INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?) "
+                , tableName, fieldOnlineUUID, fieldServiceId, fieldOnlineName, fieldOnlineNameLowerCase, fieldInGameProfileUuid
+        );
+        this.sqlSetWhitelist = String.format(
+                "UPDATE %s SET %s = ? WHERE %s = ? AND %s = ? LIMIT 1"
+                , tableName, fieldWhitelist, fieldOnlineUUID, fieldServiceId
+        );
+        this.sqlHasWhitelistByInGameUUID = String.format(
+                "SELECT %s FROM %s WHERE %s = ? LIMIT 1"
+                , fieldWhitelist, tableName, fieldInGameProfileUuid
+        );
+        this.sqlSetWhitelistByInGameUUID = String.format(
+                "UPDATE %s SET %s = ? WHERE %s = ? LIMIT 1"
+                , tableName, fieldWhitelist, fieldInGameProfileUuid
+        );
+        this.sqlSetOnlineName = String.format(
+                "UPDATE %s SET %s = ?, %s = ? WHERE %s = ? AND %s = ? LIMIT 1"
+                , tableName, fieldOnlineName, fieldOnlineNameLowerCase, fieldOnlineUUID, fieldServiceId
+        );
     }
 
     public void init(Connection connection) throws SQLException {
@@ -41,76 +114,88 @@ public class UserDataTableV3 {
                 , tableName, fieldOnlineUUID, fieldServiceId, fieldOnlineName, fieldInGameProfileUuid, fieldWhitelist);
         try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.executeUpdate();
-            // 查新表有没有数据，没有的话就尝试一下数据升级
-            try (
-                    PreparedStatement prepareStatement = connection.prepareStatement("SELECT COUNT(0) FROM " + tableName);
-                    ResultSet resultSet = prepareStatement.executeQuery();
-            ) {
-                resultSet.next();
-                if (resultSet.getInt(1) != 0) {
-                    // 新表里面有数据，不需要升级
-                    return;
-                }
-            }
-            try (
-                    PreparedStatement statement = connection.prepareStatement("SELECT COUNT(0) FROM " + tableNameV2);
-                    ResultSet resultSet = statement.executeQuery()
-            ) {
-                resultSet.next();
-                if (resultSet.getInt(1) == 0) {
-                    // 老表里面没有数据，不需要升级
-                    return;
-                }
-            } catch (Exception ignored) {
-                // 老表不存在，不需要进行升级
-                return;
-            }
         }
+        // 从老表升级数据
+        new TableMigrator(sqlManager, tableNameV2, tableName).migrate(connection, "user data",
+                "SELECT online_uuid, yggdrasil_id, in_game_profile_uuid, whitelist FROM " + tableNameV2 + " ORDER BY online_uuid, yggdrasil_id",
+                String.format(
+                        "INSERT INTO %s (%s, %s, %s, %s) VALUES (?, ?, ?, ?)", tableName, fieldOnlineUUID, fieldServiceId, fieldInGameProfileUuid, fieldWhitelist
+                ),
+                (from, to) -> {
+                    to.setBytes(1, from.getBytes(1));
+                    to.setInt(2, from.getBytes(2)[0]);
+                    to.setBytes(3, from.getBytes(3));
+                    to.setBoolean(4, from.getBoolean(4));
+                });
+    }
 
-
-        LoggerProvider.getLogger().info("Updating user data...");
-        @AllArgsConstructor
-        class V2Entry {
-            private final byte[] onlineUUID;
-            private final int serviceId;
-            private final byte[] inGameProfileUUID;
-            private final boolean whitelist;
+    /**
+     * 添加小写的在线名称列和它的索引，使按在线名称的查询不再需要全表扫描
+     */
+    public void upgradeOnlineNameLowerCase(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "SELECT %s FROM %s WHERE 1 = 0", fieldOnlineNameLowerCase, tableName));
+             ResultSet ignored = statement.executeQuery()) {
+            // 列已经存在
+            return;
+        } catch (SQLException ignored) {
+            // 列不存在，需要添加
         }
-        // 读老表
-        List<V2Entry> oldData = new ArrayList<>();
-        try (PreparedStatement statement = connection.prepareStatement("SELECT online_uuid, yggdrasil_id, in_game_profile_uuid, whitelist FROM " + tableNameV2);
-             ResultSet resultSet = statement.executeQuery();) {
-            while (resultSet.next()) {
-                oldData.add(new V2Entry(resultSet.getBytes(1),
-                        resultSet.getBytes(2)[0],
-                        resultSet.getBytes(3),
-                        resultSet.getBoolean(4))
-                );
-            }
+        LoggerProvider.getLogger().info("Adding lower case online name column to user data...");
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "ALTER TABLE %s ADD COLUMN %s VARCHAR(64) DEFAULT NULL", tableName, fieldOnlineNameLowerCase))) {
+            statement.executeUpdate();
+        }
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "CREATE INDEX %s_onln_idx ON %s ( %s, %s )", tableName, tableName, fieldOnlineNameLowerCase, fieldServiceId))) {
+            statement.executeUpdate();
         }
-        for (V2Entry datum : oldData) {
-            try (PreparedStatement statement = connection.prepareStatement(
-                    String.format(
-                            "INSERT INTO %s (%s, %s, %s, %s) VALUES (?, ?, ?, ?)", tableName, fieldOnlineUUID, fieldServiceId, fieldInGameProfileUuid, fieldWhitelist
-                    )
-            )) {
-                statement.setBytes(1, datum.onlineUUID);
-                statement.setInt(2, datum.serviceId);
-                statement.setBytes(3, datum.inGameProfileUUID);
-                statement.setBoolean(4, datum.whitelist);
-                statement.executeUpdate();
+    }
+
+    /**
+     * 分批回填小写的在线名称，每批单独提交，不会长时间锁表。
+     * 回填完成后按在线名称的查询改为走索引。
+     *
+     * @return 回填的条数
+     */
+    public int backfillOnlineNameLowerCase() throws SQLException {
+        int total = 0;
+        int updated;
+        do {
+            try (Connection connection = sqlManager.getPool().getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sqlBackfillOnlineNameLowerCase)
+            ) {
+                updated = statement.executeUpdate();
             }
+            total += updated;
+        } while (updated >= backfillBatchSize);
+        onlineNameLowerCaseReady = true;
+        if (total != 0) {
+            LoggerProvider.getLogger().info("Filled lower case online name of user data, total " + total + ".");
         }
-        LoggerProvider.getLogger().info("Updated user data, total " + oldData.size() + ".");
+        return total;
     }
 
+    /**
+     * 获得玩家数据，优先从缓存中读取
+     *
+     * @param onlineUUID 在线 UUID
+     * @param serviceId  验证服务器 ID
+     * @return 在线名称、游戏内 UUID 和白名单，数据不存在时返回 null
+     */
     public There<String, UUID, Boolean> get(UUID onlineUUID, int serviceId) throws SQLException {
-        String sql = String.format(
-                "SELECT %s, %s, %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
-                , fieldOnlineName, fieldInGameProfileUuid, fieldWhitelist, tableName, fieldOnlineUUID, fieldServiceId
-        );
-        try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+        Pair<UUID, Integer> key = new Pair<>(onlineUUID, serviceId);
+        There<String, UUID, Boolean> cached = cache.getIfPresent(key);
+        if (cached != null) return cached;
+        long generation = cache.generation();
+        There<String, UUID, Boolean> result = select(onlineUUID, serviceId);
+        cache.put(key, result, generation);
+        return result;
+    }
+
+    private There<String, UUID, Boolean> select(UUID onlineUUID, int serviceId) throws SQLException {
+        try (Connection connection = sqlManager.getPool().getReadConnection(new Pair<>(onlineUUID, serviceId));
+             PreparedStatement statement = connection.prepareStatement(sqlGet)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(onlineUUID));
             statement.setInt(2, serviceId);
@@ -127,12 +212,8 @@ public class UserDataTableV3 {
     }
 
     public UUID getOnlineUUID(String username, int serviceId) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE lower(%s) = ? AND %s = ? LIMIT 1"
-                , fieldOnlineUUID, tableName, fieldOnlineName, fieldServiceId
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(onlineNameLowerCaseReady ? sqlGetOnlineUUID : sqlGetOnlineUUIDScan)
         ) {
             statement.setString(1, username.toLowerCase(Locale.ROOT));
             statement.setInt(2, serviceId);
@@ -153,22 +234,8 @@ public class UserDataTableV3 {
      * @return 检索到的用户游戏内 UUID
      */
     public UUID getInGameUUID(UUID onlineUUID, int serviceId) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
-                , fieldInGameProfileUuid, tableName, fieldOnlineUUID, fieldServiceId
-        );
-        try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
-        ) {
-            statement.setBytes(1, ValueUtil.uuidToBytes(onlineUUID));
-            statement.setInt(2, serviceId);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    return Optional.ofNullable(resultSet.getBytes(1)).map(ValueUtil::bytesToUuid).orElse(null);
-                }
-            }
-        }
-        return null;
+        There<String, UUID, Boolean> data = get(onlineUUID, serviceId);
+        return data == null ? null : data.getValue2();
     }
 
     /**
@@ -179,12 +246,8 @@ public class UserDataTableV3 {
      */
     public Set<Integer> getOnlineServiceIds(UUID inGameUUID) throws SQLException {
         Set<Integer> result = new HashSet<>();
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE %s = ?"
-                , fieldServiceId, tableName, fieldInGameProfileUuid
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlGetOnlineServiceIds)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(inGameUUID));
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -204,12 +267,8 @@ public class UserDataTableV3 {
      */
     public Set<There<UUID, String, Integer>> getOnlineProfiles(UUID inGameUUID) throws SQLException {
         Set<There<UUID, String, Integer>> result = new HashSet<>();
-        String sql = String.format(
-                "SELECT %s, %s, %s FROM %s WHERE %s = ?"
-                , fieldOnlineUUID, fieldOnlineName, fieldServiceId, tableName, fieldInGameProfileUuid
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlGetOnlineProfiles)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(inGameUUID));
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -233,17 +292,16 @@ public class UserDataTableV3 {
      * @param newInGameUUID 新的游戏内 UUID
      */
     public int setInGameUUID(UUID onlineUUID, int serviceId, UUID newInGameUUID) throws SQLException {
-        String sql = String.format(
-                "UPDATE %s SET %s = ? WHERE %s = ? AND %s = ? LIMIT 1"
-                , tableName, fieldInGameProfileUuid, fieldOnlineUUID, fieldServiceId
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlSetInGameUUID)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(newInGameUUID));
             statement.setBytes(2, ValueUtil.uuidToBytes(onlineUUID));
             statement.setInt(3, serviceId);
             return statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(new Pair<>(onlineUUID, serviceId));
+            cache.invalidate(new Pair<>(onlineUUID, serviceId));
         }
     }
 
@@ -254,19 +312,7 @@ public class UserDataTableV3 {
      * @param serviceId service Id
      */
     public boolean dataExists(UUID onlineUUID, int serviceId) throws SQLException {
-        String sql = String.format(
-                "SELECT 1 FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
-                , tableName, fieldOnlineUUID, fieldServiceId
-        );
-        try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
-        ) {
-            statement.setBytes(1, ValueUtil.uuidToBytes(onlineUUID));
-            statement.setInt(2, serviceId);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                return resultSet.next();
-            }
-        }
+        return get(onlineUUID, serviceId) != null;
     }
 
     /**
@@ -278,22 +324,22 @@ public class UserDataTableV3 {
      * @return 数据操作量
      */
     public int insertNewData(UUID onlineUUID, int serviceId, String onlineName, UUID inGameUUID) throws SQLException {
-        String sql = String.format(
-                "INSERT INTO %s (%s, %s, %s, %s) VALUES (?, ?, ?, ?) "
-                , tableName, fieldOnlineUUID, fieldServiceId, fieldOnlineName, fieldInGameProfileUuid
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlInsertNewData)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(onlineUUID));
             statement.setInt(2, serviceId);
             statement.setString(3, onlineName);
+            statement.setString(4, toLowerCase(onlineName));
             if (inGameUUID == null) {
-                statement.setNull(4, Types.BINARY);
+                statement.setNull(5, Types.BINARY);
             } else {
-                statement.setBytes(4, ValueUtil.uuidToBytes(inGameUUID));
+                statement.setBytes(5, ValueUtil.uuidToBytes(inGameUUID));
             }
             return statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(new Pair<>(onlineUUID, serviceId));
+            cache.invalidate(new Pair<>(onlineUUID, serviceId));
         }
     }
 
@@ -305,17 +351,16 @@ public class UserDataTableV3 {
      * @param whitelist   新的白名单
      */
     public void setWhitelist(UUID onlineUUID, int serviceId, boolean whitelist) throws SQLException {
-        String sql = String.format(
-                "UPDATE %s SET %s = ? WHERE %s = ? AND %s = ? LIMIT 1"
-                , tableName, fieldWhitelist, fieldOnlineUUID, fieldServiceId
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlSetWhitelist)
         ) {
             statement.setBoolean(1, whitelist);
             statement.setBytes(2, ValueUtil.uuidToBytes(onlineUUID));
             statement.setInt(3, serviceId);
             statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(new Pair<>(onlineUUID, serviceId));
+            cache.invalidate(new Pair<>(onlineUUID, serviceId));
         }
     }
 
@@ -323,34 +368,16 @@ public class UserDataTableV3 {
      * 查询白名单
      */
     public boolean hasWhitelist(UUID onlineUUID, int serviceId) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
-                , fieldWhitelist, tableName, fieldOnlineUUID, fieldServiceId
-        );
-        try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
-        ) {
-            statement.setBytes(1, ValueUtil.uuidToBytes(onlineUUID));
-            statement.setInt(2, serviceId);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    return resultSet.getBoolean(1);
-                }
-            }
-        }
-        return false;
+        There<String, UUID, Boolean> data = get(onlineUUID, serviceId);
+        return data != null && data.getValue3();
     }
 
     /**
      * 查询白名单
      */
     public boolean hasWhitelist(UUID inGameUUID) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE %s = ? LIMIT 1"
-                , fieldWhitelist, tableName, fieldInGameProfileUuid
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlHasWhitelistByInGameUUID)
         ) {
             statement.setBytes(1, ValueUtil.uuidToBytes(inGameUUID));
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -366,50 +393,69 @@ public class UserDataTableV3 {
      * 设置白名单
      */
     public void setWhitelist(UUID inGameUUID, boolean whitelist) throws SQLException {
-        String sql = String.format(
-                "UPDATE %s SET %s = ? WHERE %s = ?LIMIT 1"
-                , tableName, fieldWhitelist, fieldInGameProfileUuid
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlSetWhitelistByInGameUUID)
         ) {
             statement.setBoolean(1, whitelist);
             statement.setBytes(2, ValueUtil.uuidToBytes(inGameUUID));
             statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(null);
+            cache.invalidateIf(data -> inGameUUID.equals(data.getValue2()));
         }
     }
 
     public void setOnlineName(UUID onlineUUID, int serviceId, String onlineName) throws SQLException {
-        String sql = String.format(
-                "UPDATE %s SET %s = ? WHERE %s = ? AND %s = ? LIMIT 1"
-                , tableName, fieldOnlineName, fieldOnlineUUID, fieldServiceId
-        );
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlSetOnlineName)
         ) {
             statement.setString(1, onlineName);
-            statement.setBytes(2, ValueUtil.uuidToBytes(onlineUUID));
-            statement.setInt(3, serviceId);
+            statement.setString(2, toLowerCase(onlineName));
+            statement.setBytes(3, ValueUtil.uuidToBytes(onlineUUID));
+            statement.setInt(4, serviceId);
             statement.executeUpdate();
+        } finally {
+            sqlManager.getPool().markWritten(new Pair<>(onlineUUID, serviceId));
+            cache.invalidate(new Pair<>(onlineUUID, serviceId));
         }
     }
 
-    public String getOnlineName(UUID onlineUUID, int serviceId) throws SQLException {
-        String sql = String.format(
-                "SELECT %s FROM %s WHERE %s = ? AND %s = ? LIMIT 1"
-                , fieldOnlineName, tableName, fieldOnlineUUID, fieldServiceId
-        );
+    /**
+     * 批量更新在线名称
+     *
+     * @param onlineNames 在线 UUID 和验证服务器 ID \ 在线名称
+     */
+    public void setOnlineNames(Map<Pair<UUID, Integer>, String> onlineNames) throws SQLException {
         try (Connection connection = sqlManager.getPool().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)
+             PreparedStatement statement = connection.prepareStatement(sqlSetOnlineName)
         ) {
-            statement.setBytes(1, ValueUtil.uuidToBytes(onlineUUID));
-            statement.setInt(2, serviceId);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    return resultSet.getString(1);
-                }
+            connection.setAutoCommit(false);
+            for (Map.Entry<Pair<UUID, Integer>, String> entry : onlineNames.entrySet()) {
+                statement.setString(1, entry.getValue());
+                statement.setString(2, toLowerCase(entry.getValue()));
+                statement.setBytes(3, ValueUtil.uuidToBytes(entry.getKey().getValue1()));
+                statement.setInt(4, entry.getKey().getValue2());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } finally {
+            for (Pair<UUID, Integer> key : onlineNames.keySet()) {
+                sqlManager.getPool().markWritten(key);
+                cache.invalidate(key);
             }
-            return null;
         }
     }
-}
\ No newline at end of file
+
+    public String getOnlineName(UUID onlineUUID, int serviceId) throws SQLException {
+        // 还没有写入的在线名称以写入队列中的为准
+        String pending = sqlManager.getWriteQueue().getPendingOnlineName(onlineUUID, serviceId);
+        if (pending != null) return pending;
+        There<String, UUID, Boolean> data = get(onlineUUID, serviceId);
+        return data == null ? null : data.getValue1();
+    }
+
+    static String toLowerCase(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+}
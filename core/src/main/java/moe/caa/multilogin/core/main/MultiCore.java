@@ -6,6 +6,7 @@ import lombok.Getter;
 import moe.caa.multilogin.api.auth.GameProfile;
 import moe.caa.multilogin.api.auth.Property;
 import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.main.FlowsStatistics;
 import moe.caa.multilogin.api.main.MultiCoreAPI;
 import moe.caa.multilogin.api.plugin.IPlugin;
 import moe.caa.multilogin.core.auth.AuthHandler;
@@ -13,14 +14,18 @@ import moe.caa.multilogin.core.auth.service.floodgate.FloodgateAuthenticationSer
 import moe.caa.multilogin.core.auth.service.yggdrasil.serialize.GameProfileSerializer;
 import moe.caa.multilogin.core.auth.service.yggdrasil.serialize.PropertySerializer;
 import moe.caa.multilogin.core.command.CommandHandler;
+import moe.caa.multilogin.core.configuration.FlowsExecutorConfig;
 import moe.caa.multilogin.core.configuration.PluginConfig;
 import moe.caa.multilogin.core.database.SQLManager;
 import moe.caa.multilogin.core.handle.CacheWhitelistHandler;
 import moe.caa.multilogin.core.handle.PlayerHandler;
 import moe.caa.multilogin.core.language.LanguageHandler;
+import moe.caa.multilogin.core.ohc.HttpClientFactory;
 import moe.caa.multilogin.core.semver.CheckUpdater;
 import moe.caa.multilogin.core.semver.SemVersion;
 import moe.caa.multilogin.core.skinrestorer.SkinRestorerCore;
+import moe.caa.multilogin.flows.executor.FlowsExecutorFactory;
+import moe.caa.multilogin.flows.workflows.BaseFlows;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -53,11 +58,15 @@ public class MultiCore implements MultiCoreAPI {
     @Getter
     private final Gson gson;
     @Getter
+    private final HttpClientFactory httpClientFactory;
+    @Getter
     private SemVersion semVersion;
     @Getter
     private boolean floodgateSupported = false;
     @Getter
     private final String httpRequestHeaderUserAgent = "MultiLogin/v2.0";
+    // 当前使用的工作流线程池配置
+    private FlowsExecutorConfig flowsExecutorConfig;
 
 
     /**
@@ -69,13 +78,13 @@ public class MultiCore implements MultiCoreAPI {
         this.languageHandler = new LanguageHandler(this);
         this.pluginConfig = new PluginConfig(plugin.getDataFolder(), this);
         this.sqlManager = new SQLManager(this);
+        this.httpClientFactory = new HttpClientFactory();
         this.authHandler = new AuthHandler(this);
         this.skinRestorerHandler = new SkinRestorerCore(this);
         this.commandHandler = new CommandHandler(this);
         this.playerHandler = new PlayerHandler(this);
         this.cacheWhitelistHandler = new CacheWhitelistHandler();
         this.gson = new GsonBuilder()
-                .setPrettyPrinting()
                 .registerTypeAdapter(GameProfile.class, new GameProfileSerializer())
                 .registerTypeAdapter(Property.class, new PropertySerializer()).create();
     }
@@ -115,7 +124,9 @@ public class MultiCore implements MultiCoreAPI {
         setupFloodgate();
         languageHandler.init();
         pluginConfig.reload();
+        applyFlowsExecutor();
         sqlManager.init();
+        skinRestorerHandler.getQueue().load();
         commandHandler.init();
         playerHandler.register();
         new CheckUpdater(this).start();
@@ -130,6 +141,21 @@ public class MultiCore implements MultiCoreAPI {
         checkEnvironment();
     }
 
+    @Override
+    public FlowsStatistics getFlowsStatistics() {
+        return authHandler.getFlowsStatistics();
+    }
+
+    // 线程池配置变动时替换工作流线程池
+    private void applyFlowsExecutor() {
+        FlowsExecutorConfig config = pluginConfig.getFlowsExecutorConfig();
+        if (config.equals(flowsExecutorConfig)) return;
+        flowsExecutorConfig = config;
+        FlowsExecutorFactory factory = config.createFactory();
+        BaseFlows.setExecutorFactory(factory);
+        LoggerProvider.getLogger().debug("Using flows executor: " + factory.getName());
+    }
+
     private void checkEnvironment() {
         if (!plugin.getRunServer().isOnlineMode()) {
             LoggerProvider.getLogger().error("Please enable online mode, otherwise the plugin will not work!!!");
@@ -145,6 +171,9 @@ public class MultiCore implements MultiCoreAPI {
 
     public void reload() throws IOException, URISyntaxException {
         pluginConfig.reload();
+        applyFlowsExecutor();
+        authHandler.getYggdrasilAuthenticationService().getClientRegistry().refresh(pluginConfig.getServiceIdMap());
+        authHandler.getYggdrasilAuthenticationService().refresh();
         languageHandler.reload();
     }
 
@@ -153,6 +182,11 @@ public class MultiCore implements MultiCoreAPI {
      */
     @Override
     public void close() {
+        authHandler.getYggdrasilAuthenticationService().getClientRegistry().close();
+        skinRestorerHandler.close();
+        httpClientFactory.close();
+        // 关闭连接池之前写入队列中剩余的数据
+        sqlManager.getWriteQueue().close();
         sqlManager.close();
     }
 }
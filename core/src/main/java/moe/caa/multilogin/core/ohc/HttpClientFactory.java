@@ -0,0 +1,98 @@
+package moe.caa.multilogin.core.ohc;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import moe.caa.multilogin.core.configuration.ProxyConfig;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共用的 HTTP 客户端工厂
+ * <p>
+ * 相同超时、代理和重试设置的请求共用同一个客户端，所有客户端共用同一个连接池和调度器。
+ * 验证服务的客户端同样从这里的根客户端构建，客户端在第一次使用时才会创建。
+ */
+public class HttpClientFactory {
+    private final Map<Settings, OkHttpClient> clientMap = new ConcurrentHashMap<>();
+    // 所有客户端的根，持有共用的连接池和调度器
+    private volatile OkHttpClient rootClient;
+
+    /**
+     * 获得客户端
+     *
+     * @param timeout    超时时间，单位毫秒
+     * @param proxy      代理设置，为 null 时不使用代理
+     * @param retry      重试次数
+     * @param retryDelay 重试间隔，单位毫秒
+     * @return 客户端
+     */
+    public OkHttpClient getClient(long timeout, ProxyConfig proxy, int retry, long retryDelay) {
+        return clientMap.computeIfAbsent(new Settings(timeout, proxy, retry, retryDelay), this::buildClient);
+    }
+
+    /**
+     * 获得根客户端，需要其他设置的客户端从它构建以共用连接池和调度器
+     */
+    public OkHttpClient getRootClient() {
+        OkHttpClient client = rootClient;
+        if (client != null) return client;
+        synchronized (this) {
+            if (rootClient == null) {
+                Dispatcher dispatcher = new Dispatcher();
+                dispatcher.setMaxRequests(256);
+                dispatcher.setMaxRequestsPerHost(64);
+                rootClient = new OkHttpClient.Builder()
+                        .dispatcher(dispatcher)
+                        .connectionPool(new ConnectionPool(32, 5, TimeUnit.MINUTES))
+                        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                        .build();
+            }
+            return rootClient;
+        }
+    }
+
+    private OkHttpClient buildClient(Settings settings) {
+        OkHttpClient.Builder builder = getRootClient().newBuilder()
+                .addInterceptor(new RetryInterceptor(settings.retry, settings.retryDelay))
+                .addInterceptor(new LoggingInterceptor())
+                .writeTimeout(Duration.ofMillis(settings.timeout))
+                .readTimeout(Duration.ofMillis(settings.timeout))
+                .connectTimeout(Duration.ofMillis(settings.timeout));
+        if (settings.proxy != null) {
+            builder.proxy(settings.proxy.getProxy())
+                    .proxyAuthenticator(settings.proxy.getProxyAuthenticator());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 关闭所有客户端
+     */
+    public synchronized void close() {
+        clientMap.clear();
+        if (rootClient == null) return;
+        rootClient.dispatcher().executorService().shutdown();
+        rootClient.connectionPool().evictAll();
+        rootClient = null;
+    }
+
+    /**
+     * 影响客户端构建的设置
+     */
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class Settings {
+        private final long timeout;
+        private final ProxyConfig proxy;
+        private final int retry;
+        private final long retryDelay;
+    }
+}
@@ -0,0 +1,41 @@
+package moe.caa.multilogin.core.ohc;
+
+/**
+ * 重试预算
+ * <p>
+ * 每次请求存入一定比例的令牌，每次重试取出一个，避免目标服务故障时重试放大流量。
+ */
+public class RetryBudget {
+    // 初始的令牌，允许刚启动时少量重试
+    private static final double INITIAL_BALANCE = 10;
+    // 最多积累的令牌
+    private static final double MAX_BALANCE = 100;
+
+    private final double ratio;
+    private double balance = INITIAL_BALANCE;
+
+    /**
+     * @param percent 重试次数占请求次数的最大百分比
+     */
+    public RetryBudget(int percent) {
+        this.ratio = Math.max(0, percent) / 100.0;
+    }
+
+    /**
+     * 记录一次请求
+     */
+    public synchronized void onRequest() {
+        balance = Math.min(MAX_BALANCE, balance + ratio);
+    }
+
+    /**
+     * 尝试取出一次重试的令牌
+     *
+     * @return 是否允许重试
+     */
+    public synchronized boolean tryRetry() {
+        if (balance < 1) return false;
+        balance--;
+        return true;
+    }
+}
@@ -1,48 +1,209 @@
 package moe.caa.multilogin.core.ohc;
 
+import lombok.Getter;
 import moe.caa.multilogin.api.logger.LoggerProvider;
-import okhttp3.Interceptor;
-import okhttp3.Request;
-import okhttp3.Response;
+import okhttp3.*;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 延时重试拦截器
+ * <p>
+ * 同步请求在拦截器内重试，通过 {@link #enqueue(OkHttpClient, Request)} 发起的异步请求由调度器延时重新发起，重试期间不占用线程。
  */
 public class RetryInterceptor implements Interceptor {
-    private final int retry;
-    private final long delay;
+    @Getter
+    private final RetryPolicy policy;
+    private final RetryBudget budget;
 
     public RetryInterceptor(int retry, long delay) {
-        this.retry = retry;
-        this.delay = delay;
+        this(new RetryPolicy(retry, delay, -1, 100));
+    }
+
+    public RetryInterceptor(RetryPolicy policy) {
+        this.policy = policy;
+        this.budget = new RetryBudget(policy.getBudgetPercent());
+    }
+
+    /**
+     * 获得客户端上的重试拦截器
+     *
+     * @return 重试拦截器，不存在时返回 null
+     */
+    public static RetryInterceptor of(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof RetryInterceptor) return (RetryInterceptor) interceptor;
+        }
+        return null;
+    }
+
+    /**
+     * 标记请求的重试由调用方自己处理，拦截器不再重试它
+     *
+     * @param request 请求
+     * @return 标记后的请求
+     */
+    public static Request withoutRetry(Request request) {
+        return request.newBuilder().tag(Scheduled.class, Scheduled.INSTANCE).build();
+    }
+
+    /**
+     * 发起异步请求，失败时由调度器延时重新发起
+     * 取消返回的 future 将同时取消正在进行的请求
+     *
+     * @param client  客户端
+     * @param request 请求
+     * @return 响应，使用完毕后需要关闭
+     */
+    public static CompletableFuture<Response> enqueue(OkHttpClient client, Request request) {
+        RetryInterceptor interceptor = of(client);
+        if (interceptor == null) {
+            return new AsyncCall(client, request, null, null).start();
+        }
+        interceptor.budget.onRequest();
+        return new AsyncCall(client, request.newBuilder().tag(Scheduled.class, Scheduled.INSTANCE).build(),
+                interceptor.policy, interceptor.budget).start();
     }
 
     @NotNull
     @Override
     public Response intercept(@NotNull Chain chain) throws IOException {
         Request request = chain.request();
-        Response response;
+        // 异步请求的重试由调度器处理，标记为自行重试的请求由调用方处理
+        if (request.tag(Scheduled.class) != null) return chain.proceed(request);
+
+        budget.onRequest();
+        long startTime = System.currentTimeMillis();
         int tc = 0;
         while (true) {
+            Response response = null;
+            IOException exception = null;
             try {
                 response = chain.proceed(request);
-                return response;
+                if (!policy.isRetryable(response)) return response;
+                LoggerProvider.getLogger().debug(tc + " retry failed, code " + response.code() + ".");
             } catch (IOException e) {
                 LoggerProvider.getLogger().debug(tc + " retry failed.", e);
-                if (tc >= retry) throw e;
+                exception = e;
             }
 
-            try {
-                TimeUnit.MILLISECONDS.sleep(delay);
-            } catch (InterruptedException e) {
-                throw new InterruptedRetryException(e);
+            // 请求已被取消，不再重试
+            long delay = chain.call().isCanceled() ? -1 : policy.nextDelay(tc, response, startTime,
+                    chain.connectTimeoutMillis() + chain.readTimeoutMillis());
+            if (delay < 0 || !budget.tryRetry()) {
+                if (exception != null) throw exception;
+                return response;
+            }
+            if (response != null) response.close();
+
+            sleep(chain, delay);
+            tc++;
+            LoggerProvider.getLogger().debug("--> " + tc + " retry.");
+        }
+    }
+
+    // 分段等待，请求被取消时立即停止
+    private static void sleep(Chain chain, long delay) throws IOException {
+        long remaining = delay;
+        try {
+            while (remaining > 0) {
+                if (chain.call().isCanceled()) throw new IOException("Canceled");
+                long slice = Math.min(remaining, 50);
+                TimeUnit.MILLISECONDS.sleep(slice);
+                remaining -= slice;
             }
+        } catch (InterruptedException e) {
+            throw new InterruptedRetryException(e);
+        }
+        if (chain.call().isCanceled()) throw new IOException("Canceled");
+    }
+
+    // 一次请求最长的耗时，设置了整体超时时按整体超时计算
+    private static long attemptTimeout(OkHttpClient client) {
+        if (client.callTimeoutMillis() > 0) return client.callTimeoutMillis();
+        return client.connectTimeoutMillis() + client.readTimeoutMillis();
+    }
+
+    /**
+     * 标记由调度器重试的异步请求
+     */
+    private enum Scheduled {
+        INSTANCE
+    }
+
+    /**
+     * 一次由调度器重试的异步请求
+     */
+    private static class AsyncCall implements Callback {
+        private final OkHttpClient client;
+        private final Request request;
+        private final RetryPolicy policy;
+        private final RetryBudget budget;
+        private final CompletableFuture<Response> future = new CompletableFuture<>();
+        private final AtomicReference<Call> current = new AtomicReference<>();
+        private final long startTime = System.currentTimeMillis();
+        private volatile int tc = 0;
+
+        private AsyncCall(OkHttpClient client, Request request, RetryPolicy policy, RetryBudget budget) {
+            this.client = client;
+            this.request = request;
+            this.policy = policy;
+            this.budget = budget;
+        }
+
+        private CompletableFuture<Response> start() {
+            future.whenComplete((response, throwable) -> {
+                if (!future.isCancelled()) return;
+                Call call = current.get();
+                if (call != null) call.cancel();
+            });
+            attempt();
+            return future;
+        }
+
+        private void attempt() {
+            if (future.isDone()) return;
+            Call call = client.newCall(request);
+            current.set(call);
+            // 在设置当前请求前被取消
+            if (future.isCancelled()) {
+                call.cancel();
+                return;
+            }
+            call.enqueue(this);
+        }
+
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException e) {
+            LoggerProvider.getLogger().debug(tc + " retry failed.", e);
+            if (!retry(null)) future.completeExceptionally(e);
+        }
+
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response) {
+            if (policy != null && policy.isRetryable(response)) {
+                LoggerProvider.getLogger().debug(tc + " retry failed, code " + response.code() + ".");
+                if (retry(response)) {
+                    response.close();
+                    return;
+                }
+            }
+            // 已被取消，释放响应
+            if (!future.complete(response)) response.close();
+        }
+
+        private boolean retry(Response response) {
+            if (policy == null || future.isDone()) return false;
+            long delay = policy.nextDelay(tc, response, startTime, attemptTimeout(client));
+            if (delay < 0 || !budget.tryRetry()) return false;
             tc++;
             LoggerProvider.getLogger().debug("--> " + tc + " retry.");
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(this::attempt);
+            return true;
         }
     }
 }
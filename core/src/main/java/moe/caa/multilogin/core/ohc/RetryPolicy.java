@@ -0,0 +1,94 @@
+package moe.caa.multilogin.core.ohc;
+
+import lombok.Getter;
+import okhttp3.Response;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重试策略
+ * <p>
+ * 使用带随机抖动的指数退避计算重试间隔，遇到 429 和 5xx 响应时同样会重试，并遵循响应的 Retry-After 头。
+ * 所有重试连同最后一次请求的超时时间都不会超过总期限，没有总期限时 Retry-After 的等待时间也有上限。
+ */
+@Getter
+public class RetryPolicy {
+    // 最长的重试间隔是基础间隔的倍数
+    private static final int MAX_BACKOFF_MULTIPLIER = 16;
+    // 没有总期限时 Retry-After 最多等待的时间，避免长时间占用登录线程
+    private static final long MAX_RETRY_AFTER = 10000;
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final long deadline;
+    private final int budgetPercent;
+
+    /**
+     * 构建重试策略
+     *
+     * @param maxRetries    最大重试次数
+     * @param baseDelay     基础重试间隔
+     * @param deadline      包括所有重试在内的总期限，小于等于 0 时不限制
+     * @param budgetPercent 重试次数占请求次数的最大百分比
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long deadline, int budgetPercent) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelay = Math.max(0, baseDelay);
+        this.maxDelay = this.baseDelay * MAX_BACKOFF_MULTIPLIER;
+        this.deadline = deadline;
+        this.budgetPercent = budgetPercent;
+    }
+
+    /**
+     * 返回这个响应是否应该重试
+     */
+    public boolean isRetryable(Response response) {
+        int code = response.code();
+        return code == 429 || (code >= 500 && code != 501 && code != 505);
+    }
+
+    /**
+     * 计算下一次重试前需要等待的时间
+     *
+     * @param attempt        已经重试的次数
+     * @param response       这次请求的响应，请求异常时为 null
+     * @param startTime      第一次请求的开始时间
+     * @param attemptTimeout 一次请求最长的耗时
+     * @return 等待时间，不应该再重试时返回 -1
+     */
+    public long nextDelay(int attempt, Response response, long startTime, long attemptTimeout) {
+        if (attempt >= maxRetries) return -1;
+
+        long delay = -1;
+        if (response != null) {
+            delay = parseRetryAfter(response.header("Retry-After"));
+            if (deadline <= 0) delay = Math.min(delay, MAX_RETRY_AFTER);
+        }
+        if (delay < 0) {
+            // 带随机抖动的指数退避，抖动范围为退避时间的一半
+            long backoff = Math.min(maxDelay, baseDelay << Math.min(attempt, 30));
+            delay = backoff == 0 ? 0 : ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+        }
+
+        // 重试的请求本身也可能耗尽超时时间，必须在总期限内完成
+        if (deadline > 0 && System.currentTimeMillis() + delay + attemptTimeout - startTime > deadline) return -1;
+        return delay;
+    }
+
+    private static long parseRetryAfter(String value) {
+        if (value == null || value.isEmpty()) return -1;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            ZonedDateTime time = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, time.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (Exception ignored) {
+        }
+        return -1;
+    }
+}
@@ -4,8 +4,6 @@ import com.google.gson.JsonParser;
 import moe.caa.multilogin.api.logger.LoggerProvider;
 import moe.caa.multilogin.api.util.ValueUtil;
 import moe.caa.multilogin.core.main.MultiCore;
-import moe.caa.multilogin.core.ohc.LoggingInterceptor;
-import moe.caa.multilogin.core.ohc.RetryInterceptor;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -14,7 +12,6 @@ import okhttp3.Response;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
@@ -32,13 +29,7 @@ public class CheckUpdater {
     }
 
     public List<SemVersion> getLatestVersionNow() throws IOException {
-        OkHttpClient client = new OkHttpClient.Builder()
-                .addInterceptor(new LoggingInterceptor())
-                .addInterceptor(new RetryInterceptor(3, 10000))
-                .writeTimeout(Duration.ofMillis(2000))
-                .readTimeout(Duration.ofMillis(2000))
-                .connectTimeout(Duration.ofMillis(2000))
-                .build();
+        OkHttpClient client = core.getHttpClientFactory().getClient(2000, null, 3, 10000);
         Request build = new Request.Builder().get().url("https://api.github.com/repos/CaaMoe/MultiLogin/contents/latest").build();
         Call call = client.newCall(build);
         try (Response execute = call.execute();
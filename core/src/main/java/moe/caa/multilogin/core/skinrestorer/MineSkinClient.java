@@ -0,0 +1,209 @@
+package moe.caa.multilogin.core.skinrestorer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.util.Pair;
+import moe.caa.multilogin.core.configuration.MineSkinConfig;
+import moe.caa.multilogin.core.main.MultiCore;
+import moe.caa.multilogin.core.ohc.RetryInterceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MineSkin 请求客户端
+ * <p>
+ * 每个 API 密钥有一个令牌桶限制请求速率，并记录 MineSkin 返回的下次可请求时间。
+ * 每次请求选择最早可以发出的密钥，多个密钥同样可用时轮流使用。
+ * 被限流的请求按 MineSkin 给出的等待时间换用其他密钥或延后重试，不会立即重复请求。
+ */
+public class MineSkinClient {
+    private final MultiCore core;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private volatile MineSkinConfig config;
+    private volatile List<KeyState> keys = Collections.emptyList();
+
+    public MineSkinClient(MultiCore core) {
+        this.core = core;
+    }
+
+    /**
+     * 生成带签名的材质
+     *
+     * @param client 请求使用的客户端
+     * @param path   接口路径，如 ‘/generate/url’
+     * @param body   请求体
+     * @param retry  被限流或请求失败时的最大重试次数
+     * @return 材质的值和签名
+     */
+    public Pair<String, String> generate(OkHttpClient client, String path, RequestBody body, int retry) throws IOException {
+        MineSkinConfig config = refreshKeys();
+        long deadline = System.currentTimeMillis() + config.getMaxWait();
+        IOException last = null;
+        for (int attempt = 0; attempt <= Math.max(0, retry); attempt++) {
+            KeyState key = acquire(config, deadline);
+
+            Request.Builder builder = new Request.Builder()
+                    .url(config.getBaseUrl() + path)
+                    .header("User-Agent", core.getHttpRequestHeaderUserAgent())
+                    .post(body);
+            if (key.apiKey != null) {
+                builder.header("Authorization", "Bearer " + key.apiKey);
+            }
+            try (Response response = client.newCall(RetryInterceptor.withoutRetry(builder.build())).execute()) {
+                ResponseBody responseBody = response.body();
+                JsonObject jo = responseBody == null ? new JsonObject() : parse(responseBody.string());
+                key.onResponse(jo, response.header("Retry-After"));
+                if (response.isSuccessful() && jo.has("data")) {
+                    JsonObject texture = jo.getAsJsonObject("data").getAsJsonObject("texture");
+                    return new Pair<>(texture.getAsJsonPrimitive("value").getAsString(),
+                            texture.getAsJsonPrimitive("signature").getAsString());
+                }
+                String error = jo.has("error") ? jo.get("error").getAsString() : "no texture data";
+                last = new SkinRestorerException(String.format("MineSkin responded with code %d: %s", response.code(), error));
+                // 只有被限流和服务端错误值得重试
+                if (response.code() != 429 && response.code() < 500) throw last;
+            } catch (SkinRestorerException e) {
+                throw e;
+            } catch (IOException e) {
+                last = e;
+            }
+            LoggerProvider.getLogger().debug(String.format("MineSkin request failed, attempt %d.", attempt + 1), last);
+        }
+        throw last;
+    }
+
+    private static JsonObject parse(String string) {
+        try {
+            JsonElement element = JsonParser.parseString(string);
+            return element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+        } catch (RuntimeException e) {
+            return new JsonObject();
+        }
+    }
+
+    // 配置变动时重建密钥状态
+    private MineSkinConfig refreshKeys() {
+        MineSkinConfig current = core.getPluginConfig().getMineSkinConfig();
+        if (current.equals(config)) return config;
+        synchronized (this) {
+            if (!current.equals(config)) {
+                List<KeyState> states = new ArrayList<>();
+                if (current.getApiKeys().isEmpty()) {
+                    states.add(new KeyState(null, current.getBurst()));
+                } else {
+                    for (String apiKey : current.getApiKeys()) {
+                        states.add(new KeyState(apiKey, current.getBurst()));
+                    }
+                }
+                keys = states;
+                config = current;
+            }
+            return config;
+        }
+    }
+
+    // 选择最早可以发出请求的密钥并预约，等待到预约的时间
+    private KeyState acquire(MineSkinConfig config, long deadline) throws IOException {
+        List<KeyState> keys = this.keys;
+        double tokensPerMilli = config.getRequestsPerMinute() / 60000;
+        int start = Math.floorMod(cursor.getAndIncrement(), keys.size());
+        KeyState selected = null;
+        long selectedAt = Long.MAX_VALUE;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.size(); i++) {
+            KeyState key = keys.get((start + i) % keys.size());
+            long at = key.peek(now, tokensPerMilli, config.getBurst());
+            if (at < selectedAt) {
+                selected = key;
+                selectedAt = at;
+            }
+        }
+        long startAt = selected.reserve(System.currentTimeMillis(), tokensPerMilli, config.getBurst(), deadline);
+        if (startAt < 0) {
+            throw new SkinRestorerException("MineSkin rate limit exceeded, no request quota is available before the deadline.");
+        }
+        long wait = startAt - System.currentTimeMillis();
+        if (wait > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SkinRestorerException("Interrupted while waiting for MineSkin request quota.", e);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 一个 API 密钥的令牌桶和限流状态
+     */
+    private static class KeyState {
+        private final String apiKey;
+        private double tokens;
+        private long lastRefill = System.currentTimeMillis();
+        // MineSkin 要求的下次请求时间
+        private long nextRequestAt = 0;
+
+        private KeyState(String apiKey, int burst) {
+            this.apiKey = apiKey;
+            this.tokens = burst;
+        }
+
+        private void refill(long now, double tokensPerMilli, int burst) {
+            if (now > lastRefill) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerMilli);
+                lastRefill = now;
+            }
+        }
+
+        // 不预约时最早可以发出请求的时间
+        private synchronized long peek(long now, double tokensPerMilli, int burst) {
+            refill(now, tokensPerMilli, burst);
+            long tokenAt = tokens >= 1 ? now : now + (long) Math.ceil((1 - tokens) / tokensPerMilli);
+            return Math.max(tokenAt, nextRequestAt);
+        }
+
+        // 预约一次请求，返回可以发出请求的时间，超过截止时间时不预约并返回 -1
+        private synchronized long reserve(long now, double tokensPerMilli, int burst, long deadline) {
+            long at = peek(now, tokensPerMilli, burst);
+            if (at > deadline) return -1;
+            tokens -= 1;
+            // 同时等待 MineSkin 下次请求时间的预约依次错开
+            if (nextRequestAt > now) nextRequestAt = at + (long) Math.ceil(1 / tokensPerMilli);
+            return at;
+        }
+
+        private synchronized void onResponse(JsonObject jo, String retryAfter) {
+            long now = System.currentTimeMillis();
+            long next = 0;
+            if (jo.has("nextRequest") && jo.get("nextRequest").isJsonPrimitive()) {
+                double nextRequest = jo.get("nextRequest").getAsDouble();
+                // 旧版接口返回秒，新版返回毫秒
+                next = nextRequest < 1e12 ? (long) (nextRequest * 1000) : (long) nextRequest;
+            } else if (jo.has("delayInfo") && jo.getAsJsonObject("delayInfo").has("millis")) {
+                next = now + jo.getAsJsonObject("delayInfo").get("millis").getAsLong();
+            } else if (jo.has("delay") && jo.get("delay").isJsonPrimitive()) {
+                next = now + (long) (jo.get("delay").getAsDouble() * 1000);
+            }
+            if (retryAfter != null) {
+                try {
+                    next = Math.max(next, now + Long.parseLong(retryAfter.trim()) * 1000);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            if (next > nextRequestAt) nextRequestAt = next;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package moe.caa.multilogin.core.skinrestorer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.Getter;
+import moe.caa.multilogin.api.auth.GameProfile;
+import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.util.Pair;
+import moe.caa.multilogin.core.configuration.SkinRestorerConfig;
+import moe.caa.multilogin.core.configuration.SkinRestorerQueueConfig;
+import moe.caa.multilogin.core.configuration.service.BaseServiceConfig;
+import moe.caa.multilogin.core.main.MultiCore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步皮肤修复队列
+ * <p>
+ * 同一皮肤 URL 和皮肤模型同时只有一个修复任务，重复提交的任务直接合并。
+ * 同时进行的任务数和排队的任务数都有上限，队列已满时按配置丢弃任务。
+ * 关闭时未完成的任务保存到文件中，下次启动时继续修复。
+ */
+public class SkinRestoreQueue {
+    private static final String FILE_NAME = "skin_restore_queue.json";
+
+    private final MultiCore core;
+    private final AtomicInteger threadId = new AtomicInteger(0);
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "MultiLogin SkinRestorer #" + threadId.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 皮肤 URL 和皮肤模型 \ 排队中和进行中的任务
+    private final Map<Pair<String, String>, Job> jobs = new HashMap<>();
+    private final Deque<Job> pending = new ArrayDeque<>();
+    private int running = 0;
+    private boolean closed = false;
+
+    @Getter
+    private final LongAdder deduplicatedCount = new LongAdder();
+    @Getter
+    private final LongAdder droppedCount = new LongAdder();
+
+    public SkinRestoreQueue(MultiCore core) {
+        this.core = core;
+    }
+
+    /**
+     * 提交修复任务
+     *
+     * @param serviceId 验证服务器 ID
+     * @param url       皮肤 URL
+     * @param model     皮肤模型
+     * @param profile   需要修复的档案
+     * @return 任务是否被接受，队列已满被丢弃时返回 false
+     */
+    public synchronized boolean submit(int serviceId, String url, String model, GameProfile profile) {
+        if (closed) return false;
+        Pair<String, String> key = new Pair<>(url, model);
+        if (jobs.containsKey(key)) {
+            deduplicatedCount.increment();
+            return true;
+        }
+        SkinRestorerQueueConfig config = core.getPluginConfig().getSkinRestorerQueueConfig();
+        // 还有空闲的修复位置时任务会立即开始，不需要排队
+        if (running >= config.getMaxConcurrency() && pending.size() >= config.getMaxQueued()) {
+            droppedCount.increment();
+            if (config.getDropPolicy() == SkinRestorerQueueConfig.DropPolicy.NEWEST || pending.isEmpty()) {
+                LoggerProvider.getLogger().debug(String.format("The skin restorer queue is full, dropped the restore of %s.", url));
+                return false;
+            }
+            Job dropped = pending.pollFirst();
+            jobs.remove(dropped.key);
+            LoggerProvider.getLogger().debug(String.format("The skin restorer queue is full, dropped the restore of %s.", dropped.key.getValue1()));
+        }
+        Job job = new Job(key, serviceId, profile);
+        jobs.put(key, job);
+        pending.addLast(job);
+        schedule();
+        return true;
+    }
+
+    /**
+     * 获得排队中的任务数
+     */
+    public synchronized int getQueued() {
+        return pending.size();
+    }
+
+    /**
+     * 获得进行中的任务数
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    private synchronized void schedule() {
+        int maxConcurrency = core.getPluginConfig().getSkinRestorerQueueConfig().getMaxConcurrency();
+        while (!closed && running < maxConcurrency && !pending.isEmpty()) {
+            Job job = pending.pollFirst();
+            running++;
+            executor.execute(() -> run(job));
+        }
+    }
+
+    private void run(Job job) {
+        try {
+            BaseServiceConfig serviceConfig = core.getPluginConfig().getServiceIdMap().get(job.serviceId);
+            if (serviceConfig == null || serviceConfig.getSkinRestorer().getRestorer() == SkinRestorerConfig.RestorerType.OFF) {
+                return;
+            }
+            String url = job.key.getValue1();
+            String model = job.key.getValue2();
+            // 重启后恢复的任务可能已经修复过了
+            if (core.getSqlManager().getSkinRestoredCacheTable().getCacheRestored(url, model) != null) return;
+            SkinRestorerResultImpl.handleSkinRestoreResult(new SkinRestorerFlows(core, serviceConfig,
+                    core.getSkinRestorerHandler().getClient(serviceConfig), url, model, job.profile).call());
+        } catch (Throwable e) {
+            SkinRestorerResultImpl.handleSkinRestoreResult(e);
+        } finally {
+            synchronized (this) {
+                running--;
+                jobs.remove(job.key, job);
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * 读取上次关闭时保存的任务
+     */
+    public void load() {
+        File file = new File(core.getPlugin().getDataFolder(), FILE_NAME);
+        if (!file.exists()) return;
+        try {
+            JsonArray array = JsonParser.parseString(Files.readString(file.toPath(), StandardCharsets.UTF_8)).getAsJsonArray();
+            int count = 0;
+            for (JsonElement element : array) {
+                JsonObject object = element.getAsJsonObject();
+                if (submit(object.get("serviceId").getAsInt(), object.get("url").getAsString(), object.get("model").getAsString(), null)) {
+                    count++;
+                }
+            }
+            LoggerProvider.getLogger().info(String.format("Resumed %d unfinished skin restore jobs.", count));
+        } catch (Exception e) {
+            LoggerProvider.getLogger().error("Unable to read unfinished skin restore jobs.", e);
+        }
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LoggerProvider.getLogger().error("Unable to delete the file of unfinished skin restore jobs.", e);
+        }
+    }
+
+    /**
+     * 关闭队列，保存排队中和进行中的任务
+     */
+    public void close() {
+        List<Job> unfinished;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            unfinished = new ArrayList<>(jobs.values());
+            pending.clear();
+        }
+        executor.shutdownNow();
+        if (unfinished.isEmpty()) return;
+
+        JsonArray array = new JsonArray();
+        for (Job job : unfinished) {
+            JsonObject object = new JsonObject();
+            object.addProperty("serviceId", job.serviceId);
+            object.addProperty("url", job.key.getValue1());
+            object.addProperty("model", job.key.getValue2());
+            array.add(object);
+        }
+        try {
+            Files.writeString(new File(core.getPlugin().getDataFolder(), FILE_NAME).toPath(), core.getGson().toJson(array), StandardCharsets.UTF_8);
+            LoggerProvider.getLogger().info(String.format("Saved %d unfinished skin restore jobs.", unfinished.size()));
+        } catch (IOException e) {
+            LoggerProvider.getLogger().error("Unable to save unfinished skin restore jobs.", e);
+        }
+    }
+
+    private static class Job {
+        private final Pair<String, String> key;
+        private final int serviceId;
+        private final GameProfile profile;
+
+        private Job(Pair<String, String> key, int serviceId, GameProfile profile) {
+            this.key = key;
+            this.serviceId = serviceId;
+            // 恢复的任务没有原来的档案，修复结果只写入缓存
+            this.profile = profile == null ? new GameProfile(null, null, new HashMap<>()) : profile;
+        }
+    }
+}
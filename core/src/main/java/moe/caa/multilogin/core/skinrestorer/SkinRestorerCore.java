@@ -1,31 +1,39 @@
 package moe.caa.multilogin.core.skinrestorer;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import moe.caa.multilogin.api.auth.AuthResult;
 import moe.caa.multilogin.api.auth.GameProfile;
 import moe.caa.multilogin.api.auth.Property;
 import moe.caa.multilogin.api.logger.LoggerProvider;
 import moe.caa.multilogin.api.skinrestorer.SkinRestorerAPI;
+import moe.caa.multilogin.api.skinrestorer.SkinRestorerResult;
 import moe.caa.multilogin.api.util.Pair;
-import moe.caa.multilogin.api.util.ValueUtil;
 import moe.caa.multilogin.core.auth.LoginAuthResult;
 import moe.caa.multilogin.core.configuration.SkinRestorerConfig;
 import moe.caa.multilogin.core.configuration.service.BaseServiceConfig;
+import moe.caa.multilogin.core.database.DataCache;
+import moe.caa.multilogin.core.database.table.SkinRestoredCacheTableV2;
 import moe.caa.multilogin.core.main.MultiCore;
-import moe.caa.multilogin.core.ohc.LoggingInterceptor;
-import moe.caa.multilogin.core.ohc.RetryInterceptor;
 import okhttp3.OkHttpClient;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
-import java.security.*;
+import java.security.KeyFactory;
+import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
-import java.time.Duration;
 import java.util.Base64;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 皮肤修复程序核心
@@ -47,19 +55,79 @@ public class SkinRestorerCore implements SkinRestorerAPI {
     }
 
     private final MultiCore core;
+    @Getter
+    private final SkinRestoreQueue queue;
+    @Getter
+    private final MineSkinClient mineSkinClient;
+    private final TextureSignatureVerifier signatureVerifier = new TextureSignatureVerifier(publicKey);
+    // 登录时修复可能等待 MineSkin 限流和网络请求，不能占用工作流线程
+    private final AtomicInteger loginThreadId = new AtomicInteger(0);
+    private final ExecutorService loginExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "MultiLogin SkinRestorer Login #" + loginThreadId.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public SkinRestorerCore(MultiCore core) {
         this.core = core;
+        this.queue = new SkinRestoreQueue(core);
+        this.mineSkinClient = new MineSkinClient(core);
     }
 
     /**
-     * 判断材质签名是否有效
+     * 从材质值中读出皮肤 URL 和皮肤模型
+     * 材质值边解码边解析，只读取需要的字段
+     *
+     * @param value 材质值
+     * @return 皮肤 URL 和皮肤模型，没有皮肤时返回 null
      */
-    private static boolean isSignatureValid(String value, String signatureValue) throws InvalidKeyException, NoSuchAlgorithmException, SignatureException {
-        Signature signature = Signature.getInstance("SHA1withRSA");
-        signature.initVerify(publicKey);
-        signature.update(value.getBytes());
-        return signature.verify(Base64.getDecoder().decode(signatureValue));
+    private static Pair<String, String> readSkin(String value) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(Base64.getDecoder().wrap(
+                new ByteArrayInputStream(value.getBytes(StandardCharsets.ISO_8859_1))), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("textures") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("SKIN") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    return readSkinObject(reader);
+                }
+                return null;
+            }
+            return null;
+        }
+    }
+
+    private static Pair<String, String> readSkinObject(JsonReader reader) throws IOException {
+        String url = null;
+        String model = "classic";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("url") && reader.peek() == JsonToken.STRING) {
+                url = reader.nextString();
+            } else if (name.equals("metadata") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("model") && reader.peek() == JsonToken.STRING) {
+                        if (reader.nextString().equals("slim")) model = "slim";
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return url == null ? null : new Pair<>(url, model);
     }
 
     /**
@@ -87,6 +155,36 @@ public class SkinRestorerCore implements SkinRestorerAPI {
         }
     }
 
+    @Override
+    public CompletableFuture<SkinRestorerResult> doRestorerAsync(AuthResult result0) {
+        LoginAuthResult result = ((LoginAuthResult) result0);
+        BaseServiceConfig serviceConfig = result.getBaseServiceAuthenticationResult().getServiceConfig();
+        // 不在登录时修复的只会读取缓存，直接在调用线程中完成
+        if (serviceConfig.getSkinRestorer().getRestorer() != SkinRestorerConfig.RestorerType.LOGIN) {
+            try {
+                return CompletableFuture.completedFuture(doRestorer(result));
+            } catch (Throwable e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> doRestorer(result), loginExecutor);
+    }
+
+    /**
+     * 获得材质签名验证结果的缓存
+     */
+    public DataCache<?, Boolean> getSignatureResultCache() {
+        return signatureVerifier.getResultCache();
+    }
+
+    /**
+     * 关闭皮肤修复，保存异步修复队列中未完成的任务
+     */
+    public void close() {
+        queue.close();
+        loginExecutor.shutdownNow();
+    }
+
     /**
      * 进行修复
      */
@@ -95,16 +193,6 @@ public class SkinRestorerCore implements SkinRestorerAPI {
         LoginAuthResult result = ((LoginAuthResult) result0);
         GameProfile profile = result.getResponse().clone();
         BaseServiceConfig serviceConfig = result.getBaseServiceAuthenticationResult().getServiceConfig();
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                .addInterceptor(new RetryInterceptor(serviceConfig.getSkinRestorer().getRetry(),
-                        serviceConfig.getSkinRestorer().getRetryDelay()))
-                .addInterceptor(new LoggingInterceptor())
-                .writeTimeout(Duration.ofMillis(serviceConfig.getSkinRestorer().getTimeout()))
-                .readTimeout(Duration.ofMillis(serviceConfig.getSkinRestorer().getTimeout()))
-                .connectTimeout(Duration.ofMillis(serviceConfig.getSkinRestorer().getTimeout()))
-                .proxy(serviceConfig.getSkinRestorer().getProxy().getProxy())
-                .proxyAuthenticator(serviceConfig.getSkinRestorer().getProxy().getProxyAuthenticator())
-                .build();
 
         if (serviceConfig.getSkinRestorer().getRestorer() == SkinRestorerConfig.RestorerType.OFF) {
             return SkinRestorerResultImpl.ofNoRestorer();
@@ -114,22 +202,24 @@ public class SkinRestorerCore implements SkinRestorerAPI {
             return SkinRestorerResultImpl.ofNoSkin();
         }
         Property textures = propertyMap.get("textures");
-        JsonObject jsonObject = JsonParser.parseString(new String(Base64.getDecoder().decode(textures.getValue()), StandardCharsets.UTF_8)).getAsJsonObject();
-        if (!jsonObject.has("textures")
-                || !jsonObject.getAsJsonObject("textures").has("SKIN")
-                || !jsonObject.getAsJsonObject("textures").getAsJsonObject("SKIN").has("url")
-        ) {
+        Pair<String, String> skin = readSkin(textures.getValue());
+        if (skin == null) {
             return SkinRestorerResultImpl.ofNoSkin();
         }
-        JsonObject skinData = jsonObject.getAsJsonObject("textures").getAsJsonObject("SKIN").getAsJsonObject();
-        String url = skinData.getAsJsonPrimitive("url").getAsString();
-        String model = skinData.has("metadata")
-                && skinData.getAsJsonObject("metadata").has("model")
-                && skinData.getAsJsonObject("metadata").getAsJsonPrimitive("model")
-                .getAsString().equals("slim") ? "slim" : "classic";
-
-        Pair<String, String> cacheRestored =
-                core.getSqlManager().getSkinRestoredCacheTable().getCacheRestored(ValueUtil.sha256(url), model);
+        String url = skin.getValue1();
+        String model = skin.getValue2();
+
+        // 签名验证的结果有缓存，同一份材质再次登录时不需要 RSA 运算
+        if (signatureVerifier.isValid(textures.getValue(), textures.getSignature())) {
+            if (isAllowedTextureDomain(url)) {
+                return SkinRestorerResultImpl.ofSignatureValid();
+            } else {
+                LoggerProvider.getLogger().warn(profile.getName() + " has a valid skin signature, but the skin URL is invalid.");
+            }
+        }
+
+        SkinRestoredCacheTableV2 cacheTable = core.getSqlManager().getSkinRestoredCacheTable();
+        Pair<String, String> cacheRestored = cacheTable.getCacheRestored(url, model);
         if (cacheRestored != null) {
             Property restoredProperty = new Property();
             restoredProperty.setName("textures");
@@ -140,25 +230,18 @@ public class SkinRestorerCore implements SkinRestorerAPI {
             return SkinRestorerResultImpl.ofUseCache(profile);
         }
 
-        if (isSignatureValid(textures.getValue(), textures.getSignature())) {
-            if (isAllowedTextureDomain(url)) {
-                return SkinRestorerResultImpl.ofSignatureValid();
-            } else {
-                LoggerProvider.getLogger().warn(profile.getName() + " has a valid skin signature, but the skin URL is invalid.");
-            }
-        }
-
-        SkinRestorerFlows srf = new SkinRestorerFlows(core, serviceConfig, okHttpClient, url, model, profile);
         if (serviceConfig.getSkinRestorer().getRestorer() == SkinRestorerConfig.RestorerType.ASYNC) {
-            core.getPlugin().getRunServer().getScheduler().runTaskAsync(() -> {
-                try {
-                    SkinRestorerResultImpl.handleSkinRestoreResult(srf.call());
-                } catch (Exception e) {
-                    SkinRestorerResultImpl.handleSkinRestoreResult(e);
-                }
-            });
+            queue.submit(serviceConfig.getId(), url, model, profile);
             return SkinRestorerResultImpl.ofRestorerAsync();
         }
-        return srf.call();
+        return new SkinRestorerFlows(core, serviceConfig, getClient(serviceConfig), url, model, profile).call();
+    }
+
+    /**
+     * 获得验证服务的皮肤修复请求客户端
+     */
+    OkHttpClient getClient(BaseServiceConfig serviceConfig) {
+        SkinRestorerConfig config = serviceConfig.getSkinRestorer();
+        return core.getHttpClientFactory().getClient(config.getTimeout(), config.getProxy(), config.getRetry(), config.getRetryDelay());
     }
 }
@@ -1,10 +1,9 @@
 package moe.caa.multilogin.core.skinrestorer;
 
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import moe.caa.multilogin.api.auth.GameProfile;
 import moe.caa.multilogin.api.auth.Property;
-import moe.caa.multilogin.api.logger.LoggerProvider;
+import moe.caa.multilogin.api.util.Pair;
 import moe.caa.multilogin.api.util.ValueUtil;
 import moe.caa.multilogin.core.configuration.SkinRestorerConfig;
 import moe.caa.multilogin.core.configuration.service.BaseServiceConfig;
@@ -49,21 +48,18 @@ public class SkinRestorerFlows implements Callable<SkinRestorerResultImpl> {
         } catch (Exception e) {
             return SkinRestorerResultImpl.ofBadSkin(e);
         }
-        Request request;
-
+        String path;
+        RequestBody body;
         if (config.getSkinRestorer().getMethod() == SkinRestorerConfig.Method.UPLOAD) {
-            request = new Request.Builder()
-                    .url("https://api.mineskin.org/generate/upload")
-                    .header("User-Agent", "MultiLogin/v2.0")
-                    .post(new MultipartBody.Builder()
-                            .setType(MultipartBody.FORM)
-                            .addFormDataPart("name", UUID.randomUUID().toString().substring(0, 6))
-                            .addFormDataPart("variant", skinModel)
-                            .addFormDataPart("visibility", "0")
-                            .addFormDataPart("file", "upload.png",
-                                    RequestBody.create(bytes, MediaType.parse("multipart/form-data"))
-                            )
-                            .build())
+            path = "/generate/upload";
+            body = new MultipartBody.Builder()
+                    .setType(MultipartBody.FORM)
+                    .addFormDataPart("name", UUID.randomUUID().toString().substring(0, 6))
+                    .addFormDataPart("variant", skinModel)
+                    .addFormDataPart("visibility", "0")
+                    .addFormDataPart("file", "upload.png",
+                            RequestBody.create(bytes, MediaType.parse("multipart/form-data"))
+                    )
                     .build();
         } else {
             JsonObject jo = new JsonObject();
@@ -72,25 +68,17 @@ public class SkinRestorerFlows implements Callable<SkinRestorerResultImpl> {
             jo.addProperty("visibility", 0);
             jo.addProperty("url", skinUrl);
 
-            request = new Request.Builder()
-                    .url("https://api.mineskin.org/generate/url")
-                    .header("User-Agent", core.getHttpRequestHeaderUserAgent())
-                    .header("Content-Type", "application/json")
-                    .post(RequestBody.create(core.getGson().toJson(jo), MediaType.parse("application/json; charset=utf-8")))
-                    .build();
+            path = "/generate/url";
+            body = RequestBody.create(core.getGson().toJson(jo), MediaType.parse("application/json; charset=utf-8"));
         }
 
-        Response execute = okHttpClient.newCall(request).execute();
-        JsonObject jo = JsonParser.parseString(Objects.requireNonNull(execute.body()).string()).getAsJsonObject()
-                .getAsJsonObject("data")
-                .getAsJsonObject("texture");
-        String value = jo.getAsJsonPrimitive("value").getAsString();
-        String signature = jo.getAsJsonPrimitive("signature").getAsString();
-        try {
-            core.getSqlManager().getSkinRestoredCacheTable().insertNew(ValueUtil.sha256(skinUrl), skinModel, value, signature);
-        } catch (Exception e) {
-            LoggerProvider.getLogger().warn("An exception occurred while saving restored skin data.", e);
-        }
+        // 请求速率由 MineSkin 客户端按密钥的限流状态控制
+        Pair<String, String> texture = core.getSkinRestorerHandler().getMineSkinClient()
+                .generate(okHttpClient, path, body, config.getSkinRestorer().getRetry());
+        String value = texture.getValue1();
+        String signature = texture.getValue2();
+        // 修复结果已经可以直接使用，缓存交给写入队列批量写入
+        core.getSqlManager().getWriteQueue().insertSkinRestored(ValueUtil.sha256(skinUrl), skinModel, value, signature);
         Property restoredProperty = new Property();
         restoredProperty.setName("textures");
         restoredProperty.setValue(value);
@@ -0,0 +1,87 @@
+package moe.caa.multilogin.core.skinrestorer;
+
+import lombok.Getter;
+import moe.caa.multilogin.core.database.DataCache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 材质签名验证器
+ * <p>
+ * 复用已经初始化公钥的 Signature 对象，并缓存最近的验证结果，同一份材质再次登录时不再进行 RSA 运算。
+ * Signature 对象放在池中而不是线程变量中，工作流使用虚拟线程时同样可以复用。
+ */
+class TextureSignatureVerifier {
+    private static final int CACHE_SIZE = 4096;
+
+    private final PublicKey publicKey;
+    private final Queue<Signature> signaturePool = new ConcurrentLinkedQueue<>();
+    private final Queue<MessageDigest> digestPool = new ConcurrentLinkedQueue<>();
+    // 材质值和签名的摘要 \ 签名是否有效，签名的有效性不会改变，条目不过期
+    @Getter
+    private final DataCache<ByteBuffer, Boolean> resultCache = new DataCache<>(CACHE_SIZE, 0);
+
+    TextureSignatureVerifier(PublicKey publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * 判断材质签名是否有效
+     *
+     * @param value          材质值
+     * @param signatureValue 材质签名
+     */
+    boolean isValid(String value, String signatureValue) throws GeneralSecurityException {
+        if (signatureValue == null) return false;
+        // 摘要同时包含材质值和签名，其他材质的有效签名不能被复用
+        ByteBuffer key = ByteBuffer.wrap(digest(value, signatureValue));
+        Boolean cached = resultCache.getIfPresent(key);
+        if (cached != null) return cached;
+        long generation = resultCache.generation();
+        boolean valid = verify(value, signatureValue);
+        resultCache.put(key, valid, generation);
+        return valid;
+    }
+
+    private boolean verify(String value, String signatureValue) throws GeneralSecurityException {
+        byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(signatureValue);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Signature signature = signaturePool.poll();
+        if (signature == null) {
+            signature = Signature.getInstance("SHA1withRSA");
+            signature.initVerify(publicKey);
+        }
+        try {
+            signature.update(value.getBytes(StandardCharsets.UTF_8));
+            // verify 完成后 Signature 回到 initVerify 之后的状态，可以直接复用
+            boolean valid = signature.verify(decoded);
+            signaturePool.offer(signature);
+            return valid;
+        } catch (SignatureException e) {
+            // 签名格式错误时 Signature 的状态不确定，丢弃它
+            return false;
+        }
+    }
+
+    private byte[] digest(String value, String signatureValue) throws NoSuchAlgorithmException {
+        MessageDigest digest = digestPool.poll();
+        if (digest == null) {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(signatureValue.getBytes(StandardCharsets.UTF_8));
+        byte[] result = digest.digest();
+        digestPool.offer(digest);
+        return result;
+    }
+}
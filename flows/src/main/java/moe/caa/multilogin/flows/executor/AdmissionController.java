@@ -0,0 +1,136 @@
+package moe.caa.multilogin.flows.executor;
+
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 准入控制
+ * <p>
+ * 限制同时进行的任务数，超出的任务进入有上限的等待队列，队列已满或等待超时的任务将被拒绝。
+ * 等待期间不占用任何线程。
+ */
+public class AdmissionController {
+    @Getter
+    private final int maxConcurrency;
+    @Getter
+    private final int maxQueued;
+    @Getter
+    private final long queueTimeout;
+
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int active = 0;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    /**
+     * @param maxConcurrency 最大同时进行的任务数
+     * @param maxQueued      等待队列的长度
+     * @param queueTimeout   任务最长的等待时间，单位毫秒
+     */
+    public AdmissionController(int maxConcurrency, int maxQueued, long queueTimeout) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeout = Math.max(0, queueTimeout);
+    }
+
+    /**
+     * 提交一个任务，任务在获得准入后开始，结束后释放准入
+     *
+     * @param task 任务
+     * @return 任务结果，被拒绝时以 {@link AdmissionRejectedException} 异常完成
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        return acquire().thenCompose(ignored -> {
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (Throwable e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            return future.whenComplete((t, throwable) -> release());
+        });
+    }
+
+    /**
+     * 获得准入
+     *
+     * @return 获得准入时完成，被拒绝时以 {@link AdmissionRejectedException} 异常完成
+     */
+    public CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> waiter;
+        synchronized (this) {
+            if (active < maxConcurrency) {
+                active++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (waiters.size() >= maxQueued) {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new AdmissionRejectedException(AdmissionRejectedException.Reason.QUEUE_FULL));
+            }
+            waiter = new CompletableFuture<>();
+            waiters.addLast(waiter);
+        }
+        // 等待超时
+        CompletableFuture.delayedExecutor(queueTimeout, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (this) {
+                if (!waiters.remove(waiter)) return;
+            }
+            rejected.incrementAndGet();
+            waiter.completeExceptionally(new AdmissionRejectedException(AdmissionRejectedException.Reason.TIMEOUT));
+        });
+        return waiter;
+    }
+
+    /**
+     * 释放准入，交给下一个等待的任务
+     */
+    public void release() {
+        completed.incrementAndGet();
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.pollFirst();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            // 等待的任务已被取消时交给下一个
+            if (next.complete(null)) return;
+        }
+    }
+
+    /**
+     * 获得正在进行的任务数
+     */
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * 获得正在等待的任务数
+     */
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    /**
+     * 获得被拒绝的任务总数
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * 获得已完成的任务总数
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+}
@@ -0,0 +1,23 @@
+package moe.caa.multilogin.flows.executor;
+
+import lombok.Getter;
+
+/**
+ * 表示任务没有获得准入
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    @Getter
+    private final Reason reason;
+
+    public AdmissionRejectedException(Reason reason) {
+        super("Admission rejected: " + reason.name(), null, false, false);
+        this.reason = reason;
+    }
+
+    public enum Reason {
+        // 等待队列已满
+        QUEUE_FULL,
+        // 等待超时
+        TIMEOUT
+    }
+}
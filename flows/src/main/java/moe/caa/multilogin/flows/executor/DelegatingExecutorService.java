@@ -0,0 +1,67 @@
+package moe.caa.multilogin.flows.executor;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可以替换实际线程池的线程池
+ * 替换后新的任务交由新的线程池执行，旧线程池中的任务会继续执行完毕。
+ */
+public class DelegatingExecutorService extends AbstractExecutorService {
+    private volatile ExecutorService delegate;
+    private volatile boolean shutdown = false;
+
+    public DelegatingExecutorService(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 替换实际的线程池
+     *
+     * @param executorService 新的线程池
+     * @return 旧的线程池
+     */
+    public synchronized ExecutorService setDelegate(ExecutorService executorService) {
+        if (shutdown) {
+            executorService.shutdown();
+            return executorService;
+        }
+        ExecutorService old = delegate;
+        delegate = executorService;
+        return old;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(command);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        delegate.shutdown();
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        shutdown = true;
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,20 @@
+package moe.caa.multilogin.flows.executor;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 工作流线程池工厂
+ * 可以通过 {@link moe.caa.multilogin.flows.workflows.BaseFlows#setExecutorFactory(FlowsExecutorFactory)} 替换工作流使用的线程池。
+ */
+public interface FlowsExecutorFactory {
+
+    /**
+     * 获得线程池名称，用于日志
+     */
+    String getName();
+
+    /**
+     * 创建一个新的线程池
+     */
+    ExecutorService create();
+}
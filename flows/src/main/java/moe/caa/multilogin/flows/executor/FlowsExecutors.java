@@ -0,0 +1,92 @@
+package moe.caa.multilogin.flows.executor;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 内置的工作流线程池
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FlowsExecutors {
+
+    /**
+     * 返回当前运行环境是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * 获得有线程数上限的平台线程池，空闲线程 60 秒后回收
+     *
+     * @param maxThreads 最大线程数
+     */
+    public static FlowsExecutorFactory platform(int maxThreads) {
+        int threads = Math.max(1, maxThreads);
+        return new FlowsExecutorFactory() {
+            @Override
+            public String getName() {
+                return "platform(maxThreads=" + threads + ")";
+            }
+
+            @Override
+            public ExecutorService create() {
+                AtomicInteger asyncThreadId = new AtomicInteger(0);
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), r -> {
+                    final Thread thread = new Thread(r, "MultiLogin Flows #" + asyncThreadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.allowCoreThreadTimeOut(true);
+                return executor;
+            }
+        };
+    }
+
+    /**
+     * 获得虚拟线程池，每个任务使用一个虚拟线程，需要 Java 21 及以上
+     *
+     * @throws UnsupportedOperationException 当前运行环境不支持虚拟线程
+     */
+    public static FlowsExecutorFactory virtual() {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later, current " + Runtime.version().feature() + ".");
+        }
+        return new FlowsExecutorFactory() {
+            @Override
+            public String getName() {
+                return "virtual";
+            }
+
+            @Override
+            public ExecutorService create() {
+                // 核心以 Java 17 编译，通过反射创建虚拟线程池
+                try {
+                    Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                    Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+                    builder = ofVirtualClass.getMethod("name", String.class, long.class).invoke(builder, "MultiLogin Flows Virtual #", 1L);
+                    Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+                    ThreadFactory threadFactory = (ThreadFactory) factoryMethod.invoke(builder);
+                    return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                            .invoke(null, threadFactory);
+                } catch (ReflectiveOperationException e) {
+                    throw new UnsupportedOperationException("Unable to create a virtual thread executor.", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * 支持虚拟线程时使用虚拟线程池，否则使用平台线程池
+     *
+     * @param maxThreads 平台线程池的最大线程数
+     */
+    public static FlowsExecutorFactory auto(int maxThreads) {
+        return isVirtualThreadSupported() ? virtual() : platform(maxThreads);
+    }
+}
@@ -1,11 +1,11 @@
 package moe.caa.multilogin.flows.workflows;
 
-import lombok.AccessLevel;
 import lombok.Getter;
+import moe.caa.multilogin.flows.executor.DelegatingExecutorService;
+import moe.caa.multilogin.flows.executor.FlowsExecutorFactory;
+import moe.caa.multilogin.flows.executor.FlowsExecutors;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 表示一个工作流
@@ -13,14 +13,27 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @param <CONTEXT> 加工上下文
  */
 public abstract class BaseFlows<CONTEXT> {
-    private static final AtomicInteger asyncThreadId = new AtomicInteger(0);
-
-    @Getter(value = AccessLevel.PROTECTED)
-    private static final ExecutorService executorService = Executors.newCachedThreadPool(r -> {
-        final Thread thread = new Thread(r, "MultiLogin Flows #" + asyncThreadId.incrementAndGet());
-        thread.setDaemon(true);
-        return thread;
-    });
+    // 默认的平台线程池最大线程数
+    private static final int DEFAULT_MAX_THREADS = 64;
+
+    @Getter
+    private static FlowsExecutorFactory executorFactory = FlowsExecutors.platform(DEFAULT_MAX_THREADS);
+
+    @Getter
+    private static final DelegatingExecutorService executorService = new DelegatingExecutorService(executorFactory.create());
+
+    /**
+     * 替换工作流使用的线程池
+     * 已经提交的任务会在旧的线程池中执行完毕
+     *
+     * @param factory 线程池工厂
+     */
+    public static synchronized void setExecutorFactory(FlowsExecutorFactory factory) {
+        if (executorService.isShutdown()) return;
+        ExecutorService old = executorService.setDelegate(factory.create());
+        executorFactory = factory;
+        old.shutdown();
+    }
 
     public static synchronized void close() {
         if (executorService.isShutdown()) return;
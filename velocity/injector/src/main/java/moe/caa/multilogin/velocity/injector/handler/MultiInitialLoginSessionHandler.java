@@ -181,47 +181,82 @@ public class MultiInitialLoginSessionHandler {
             String serverId = EncryptionUtils.generateServerId(decryptedSharedSecret, serverKeyPair.getPublic());
             String playerIp = ((InetSocketAddress) this.mcConnection.getRemoteAddress()).getHostString();
 
-            LoginAuthResult result = (LoginAuthResult) multiCoreAPI.getAuthHandler().auth(username, serverId, playerIp);
-
-            if (this.mcConnection.isClosed()) return;
-            try {
-                this.mcConnection.enableEncryption(decryptedSharedSecret);
-            } catch (GeneralSecurityException var8) {
-                LoggerProvider.getLogger().error("Unable to enable encryption for connection", var8);
-                this.mcConnection.close(true);
-                return;
-            }
-            if (result.getResult() == AuthResult.Result.ALLOW) {
-                GameProfile gameProfile = result.getResponse();
-
-                try {
-                    SkinRestorerResult restorerResult = multiCoreAPI.getSkinRestorerHandler().doRestorer(result);
-                    if (restorerResult.getThrowable() != null) {
-                        LoggerProvider.getLogger().error("An exception occurred while processing the skin repair.", restorerResult.getThrowable());
-                    }
-                    LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), restorerResult.getReason()));
-
-                    if (restorerResult.getResponse() != null) {
-                        gameProfile = restorerResult.getResponse();
-                    }
-                } catch (Exception e) {
-                    LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), "error"));
-                    LoggerProvider.getLogger().debug("An exception occurred while processing the skin repair.", e);
+            // 验证期间不阻塞 Netty 事件循环线程，结果返回后再回到事件循环中完成登录
+            multiCoreAPI.getAuthHandler().authAsync(username, serverId, playerIp).whenComplete((authResult, throwable) -> {
+                if (throwable != null) {
+                    this.mcConnection.eventLoop().execute(() -> handleException(throwable));
+                    return;
                 }
-
-                this.mcConnection.setActiveSessionHandler(StateRegistry.LOGIN,
-                        (AuthSessionHandler) authSessionHandler_allArgsConstructor.invoke(
-                        this.server, inbound, generateGameProfile(gameProfile), true
-                ));
-            } else {
-                this.inbound.disconnect(Component.text(result.getKickMessage()));
-            }
+                LoginAuthResult result = (LoginAuthResult) authResult;
+                if (result.getResult() != AuthResult.Result.ALLOW) {
+                    this.mcConnection.eventLoop().execute(() -> finishLoginSafely(result, null, decryptedSharedSecret));
+                    return;
+                }
+                // 皮肤修复可能需要访问网络，在皮肤修复线程中处理，不占用事件循环和工作流线程
+                multiCoreAPI.getSkinRestorerHandler().doRestorerAsync(result).whenComplete((restorerResult, restorerThrowable) -> {
+                    GameProfile gameProfile = restoredProfile(result, restorerResult, restorerThrowable);
+                    this.mcConnection.eventLoop().execute(() -> finishLoginSafely(result, gameProfile, decryptedSharedSecret));
+                });
+            });
         } catch (GeneralSecurityException var9) {
             LoggerProvider.getLogger().error("Unable to enable encryption.", var9);
             this.mcConnection.close(true);
         }
     }
 
+    private GameProfile restoredProfile(LoginAuthResult result, SkinRestorerResult restorerResult, Throwable throwable) {
+        GameProfile gameProfile = result.getResponse();
+        if (throwable != null) {
+            LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), "error"));
+            LoggerProvider.getLogger().debug("An exception occurred while processing the skin repair.", throwable);
+            return gameProfile;
+        }
+        if (restorerResult.getThrowable() != null) {
+            LoggerProvider.getLogger().error("An exception occurred while processing the skin repair.", restorerResult.getThrowable());
+        }
+        LoggerProvider.getLogger().debug(String.format("Skin restore result of %s is %s.", result.getBaseServiceAuthenticationResult().getResponse().getName(), restorerResult.getReason()));
+
+        if (restorerResult.getResponse() != null) {
+            gameProfile = restorerResult.getResponse();
+        }
+        return gameProfile;
+    }
+
+    private void finishLoginSafely(LoginAuthResult result, GameProfile gameProfile, byte[] decryptedSharedSecret) {
+        try {
+            finishLogin(result, gameProfile, decryptedSharedSecret);
+        } catch (Throwable e) {
+            handleException(e);
+        }
+    }
+
+    private void finishLogin(LoginAuthResult result, GameProfile gameProfile, byte[] decryptedSharedSecret) throws Throwable {
+        if (this.mcConnection.isClosed()) return;
+        try {
+            this.mcConnection.enableEncryption(decryptedSharedSecret);
+        } catch (GeneralSecurityException var8) {
+            LoggerProvider.getLogger().error("Unable to enable encryption for connection", var8);
+            this.mcConnection.close(true);
+            return;
+        }
+        if (result.getResult() == AuthResult.Result.ALLOW) {
+            this.mcConnection.setActiveSessionHandler(StateRegistry.LOGIN,
+                    (AuthSessionHandler) authSessionHandler_allArgsConstructor.invoke(
+                    this.server, inbound, generateGameProfile(gameProfile), true
+            ));
+        } else {
+            this.inbound.disconnect(Component.text(result.getKickMessage()));
+        }
+    }
+
+    private void handleException(Throwable e) {
+        if (!this.mcConnection.isClosed()) {
+            this.inbound.disconnect(Component.text(multiCoreAPI.getLanguageHandler().getMessage("auth_error")));
+            this.mcConnection.close(true);
+        }
+        LoggerProvider.getLogger().error("An exception occurred while processing a login request.", e);
+    }
+
     private com.velocitypowered.api.util.GameProfile generateGameProfile(GameProfile response) {
         return new com.velocitypowered.api.util.GameProfile(
                 response.getId(),